@@ -1 +1,5 @@
 LOCAL_PATH := $(call my-dir)
+
+# Only the test and tool makefiles of this tree, never whatever else lands below it
+include $(LOCAL_PATH)/tests/Android.mk \
+    $(LOCAL_PATH)/tools/doze-replay/Android.mk
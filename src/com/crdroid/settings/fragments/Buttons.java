@@ -41,7 +41,7 @@ import com.android.settingslib.search.SearchIndexable;
 import com.crdroid.settings.fragments.buttons.ButtonBacklightBrightness;
 import com.crdroid.settings.fragments.buttons.PowerMenuActions;
 import com.crdroid.settings.preferences.LineageSystemSettingSeekBarPreference;
-import com.crdroid.settings.utils.DeviceUtils;
+import com.crdroid.settings.utils.DeviceCapabilities;
 import com.crdroid.settings.utils.TelephonyUtils;
 
 import static org.lineageos.internal.util.DeviceKeysConstants.*;
@@ -140,22 +140,23 @@ public class Buttons extends SettingsPreferenceFragment implements
         final ContentResolver resolver = getActivity().getContentResolver();
         final PreferenceScreen prefScreen = getPreferenceScreen();
 
-        final boolean hasPowerKey = DeviceUtils.hasPowerKey();
-        final boolean hasHomeKey = DeviceUtils.hasHomeKey(getActivity());
-        final boolean hasBackKey = DeviceUtils.hasBackKey(getActivity());
-        final boolean hasMenuKey = DeviceUtils.hasMenuKey(getActivity());
-        final boolean hasAssistKey = DeviceUtils.hasAssistKey(getActivity());
-        final boolean hasAppSwitchKey = DeviceUtils.hasAppSwitchKey(getActivity());
-        final boolean hasCameraKey = DeviceUtils.hasCameraKey(getActivity());
-        final boolean hasVolumeKeys = DeviceUtils.hasVolumeKeys(getActivity());
-
-        final boolean showHomeWake = DeviceUtils.canWakeUsingHomeKey(getActivity());
-        final boolean showBackWake = DeviceUtils.canWakeUsingBackKey(getActivity());
-        final boolean showMenuWake = DeviceUtils.canWakeUsingMenuKey(getActivity());
-        final boolean showAssistWake = DeviceUtils.canWakeUsingAssistKey(getActivity());
-        final boolean showAppSwitchWake = DeviceUtils.canWakeUsingAppSwitchKey(getActivity());
-        final boolean showCameraWake = DeviceUtils.canWakeUsingCameraKey(getActivity());
-        final boolean showVolumeWake = DeviceUtils.canWakeUsingVolumeKeys(getActivity());
+        final DeviceCapabilities caps = DeviceCapabilities.get(getActivity());
+        final boolean hasPowerKey = caps.hasPowerKey();
+        final boolean hasHomeKey = caps.hasHomeKey();
+        final boolean hasBackKey = caps.hasBackKey();
+        final boolean hasMenuKey = caps.hasMenuKey();
+        final boolean hasAssistKey = caps.hasAssistKey();
+        final boolean hasAppSwitchKey = caps.hasAppSwitchKey();
+        final boolean hasCameraKey = caps.hasCameraKey();
+        final boolean hasVolumeKeys = caps.hasVolumeKeys();
+
+        final boolean showHomeWake = caps.canWakeUsingHomeKey();
+        final boolean showBackWake = caps.canWakeUsingBackKey();
+        final boolean showMenuWake = caps.canWakeUsingMenuKey();
+        final boolean showAssistWake = caps.canWakeUsingAssistKey();
+        final boolean showAppSwitchWake = caps.canWakeUsingAppSwitchKey();
+        final boolean showCameraWake = caps.canWakeUsingCameraKey();
+        final boolean showVolumeWake = caps.canWakeUsingVolumeKeys();
 
         final PreferenceCategory powerCategory = prefScreen.findPreference(CATEGORY_POWER);
         final PreferenceCategory homeCategory = prefScreen.findPreference(CATEGORY_HOME);
@@ -230,7 +231,7 @@ public class Buttons extends SettingsPreferenceFragment implements
                 powerCategory.removePreference(mPowerEndCall);
                 mPowerEndCall = null;
             }
-            if (!DeviceUtils.deviceSupportsFlashLight(getActivity())) {
+            if (!caps.deviceSupportsFlashLight()) {
                 powerCategory.removePreference(mTorchLongPressPowerGesture);
                 powerCategory.removePreference(mTorchLongPressPowerTimeout);
             }
@@ -359,8 +360,8 @@ public class Buttons extends SettingsPreferenceFragment implements
         }
 
         backlight = extrasCategory.findPreference(KEY_BUTTON_BACKLIGHT);
-        if (!DeviceUtils.hasButtonBacklightSupport(getActivity())
-                && !DeviceUtils.hasKeyboardBacklightSupport(getActivity())) {
+        if (!caps.hasButtonBacklightSupport()
+                && !caps.hasKeyboardBacklightSupport()) {
             extrasCategory.removePreference(backlight);
             backlight = null;
         } else if (isKeyDisablerSupported(getActivity())) {
@@ -588,11 +589,12 @@ public class Buttons extends SettingsPreferenceFragment implements
 
                     LineageHardwareManager mLineageHardware = LineageHardwareManager.getInstance(context);
 
-                    final boolean hasHomeKey = DeviceUtils.hasHomeKey(context);
-                    final boolean hasBackKey = DeviceUtils.hasBackKey(context);
-                    final boolean hasMenuKey = DeviceUtils.hasMenuKey(context);
-                    final boolean hasAssistKey = DeviceUtils.hasAssistKey(context);
-                    final boolean hasAppSwitchKey = DeviceUtils.hasAppSwitchKey(context);
+                    final DeviceCapabilities caps = DeviceCapabilities.get(context);
+                    final boolean hasHomeKey = caps.hasHomeKey();
+                    final boolean hasBackKey = caps.hasBackKey();
+                    final boolean hasMenuKey = caps.hasMenuKey();
+                    final boolean hasAssistKey = caps.hasAssistKey();
+                    final boolean hasAppSwitchKey = caps.hasAppSwitchKey();
 
                     if (!isKeyDisablerSupported(context))
                         keys.add(HWKEYS_DISABLED);
@@ -604,7 +606,7 @@ public class Buttons extends SettingsPreferenceFragment implements
                             && !hasAppSwitchKey)
                         keys.add(KEY_ANBI);
 
-                    if (!DeviceUtils.hasPowerKey()) {
+                    if (!caps.hasPowerKey()) {
                         keys.add(KEY_POWER_MENU);
                         keys.add(KEY_POWER_END_CALL);
                         keys.add(KEY_TORCH_LONG_PRESS_POWER_GESTURE);
@@ -613,7 +615,7 @@ public class Buttons extends SettingsPreferenceFragment implements
                         if (!TelephonyUtils.isVoiceCapable(context)) {
                             keys.add(KEY_POWER_END_CALL);
                         }
-                        if (!DeviceUtils.deviceSupportsFlashLight(context)) {
+                        if (!caps.deviceSupportsFlashLight()) {
                             keys.add(KEY_TORCH_LONG_PRESS_POWER_GESTURE);
                             keys.add(KEY_TORCH_LONG_PRESS_POWER_TIMEOUT);
                         }
@@ -623,7 +625,7 @@ public class Buttons extends SettingsPreferenceFragment implements
                     keys.add(KEY_HOME_LONG_PRESS);
                     keys.add(KEY_HOME_DOUBLE_TAP);
 
-                    if (!DeviceUtils.hasHomeKey(context) || !TelephonyUtils.isVoiceCapable(context)) {
+                    if (!caps.hasHomeKey() || !TelephonyUtils.isVoiceCapable(context)) {
                         keys.add(KEY_HOME_ANSWER_CALL);
                     }
 
@@ -640,14 +642,14 @@ public class Buttons extends SettingsPreferenceFragment implements
                     keys.add(KEY_APP_SWITCH_LONG_PRESS);
                     keys.add(KEY_CAMERA_WAKE_SCREEN);
 
-                    if (!DeviceUtils.hasCameraKey(context)) {
+                    if (!caps.hasCameraKey()) {
                         keys.add(KEY_CAMERA_SLEEP_ON_RELEASE);
                         keys.add(KEY_CAMERA_LAUNCH);
                     }
 
                     keys.add(KEY_VOLUME_WAKE_SCREEN);
 
-                    if (!DeviceUtils.hasVolumeKeys(context)) {
+                    if (!caps.hasVolumeKeys()) {
                         keys.add(KEY_VOLUME_ANSWER_CALL);
                         keys.add(KEY_VOLUME_MUSIC_CONTROLS);
                         keys.add(KEY_VOLUME_KEY_CURSOR_CONTROL);
@@ -659,8 +661,8 @@ public class Buttons extends SettingsPreferenceFragment implements
                         }
                     }
 
-                    if (!DeviceUtils.hasButtonBacklightSupport(context)
-                            && !DeviceUtils.hasKeyboardBacklightSupport(context)) {
+                    if (!caps.hasButtonBacklightSupport()
+                            && !caps.hasKeyboardBacklightSupport()) {
                         keys.add(KEY_BUTTON_BACKLIGHT);
                     }
 
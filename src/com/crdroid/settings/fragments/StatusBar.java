@@ -45,7 +45,7 @@ import com.crdroid.settings.fragments.statusbar.NetworkTrafficSettings;
 import com.crdroid.settings.preferences.CustomSeekBarPreference;
 import com.crdroid.settings.preferences.RisingSystemSettingListPreference;
 import com.crdroid.settings.preferences.SystemSettingSeekBarPreference;
-import com.crdroid.settings.utils.DeviceUtils;
+import com.crdroid.settings.utils.DeviceCapabilities;
 
 import lineageos.providers.LineageSettings;
 
@@ -96,16 +96,18 @@ public class StatusBar extends SettingsPreferenceFragment implements
         mStatusBarClock =
                 (RisingSystemSettingListPreference) findPreference(STATUS_BAR_CLOCK_STYLE);
 
+        final boolean hasCenteredCutout = DeviceCapabilities.get(mContext).hasCenteredCutout();
+
         // Adjust status bar preferences for RTL
         if (getResources().getConfiguration().getLayoutDirection() == View.LAYOUT_DIRECTION_RTL) {
-            if (DeviceUtils.hasCenteredCutout(mContext)) {
+            if (hasCenteredCutout) {
                 mStatusBarClock.setEntries(R.array.status_bar_clock_position_entries_notch_rtl);
                 mStatusBarClock.setEntryValues(R.array.status_bar_clock_position_values_notch_rtl);
             } else {
                 mStatusBarClock.setEntries(R.array.status_bar_clock_position_entries_rtl);
                 mStatusBarClock.setEntryValues(R.array.status_bar_clock_position_values_rtl);
             }
-        } else if (DeviceUtils.hasCenteredCutout(mContext)) {
+        } else if (hasCenteredCutout) {
             mStatusBarClock.setEntries(R.array.status_bar_clock_position_entries_notch);
             mStatusBarClock.setEntryValues(R.array.status_bar_clock_position_values_notch);
         }
@@ -39,7 +39,7 @@ import androidx.preference.PreferenceManager;
 import com.android.settings.R;
 
 import com.crdroid.settings.preferences.CustomDialogPref;
-import com.crdroid.settings.utils.DeviceUtils;
+import com.crdroid.settings.utils.DeviceCapabilities;
 
 import lineageos.providers.LineageSettings;
 
@@ -70,7 +70,7 @@ public class ButtonBacklightBrightness extends CustomDialogPref<AlertDialog> imp
 
         setDialogLayoutResource(R.layout.button_backlight);
 
-        if (DeviceUtils.hasKeyboardBacklightSupport(context)) {
+        if (DeviceCapabilities.get(context).hasKeyboardBacklightSupport()) {
             final boolean isSingleValue = KEYBOARD_BRIGHTNESS_TOGGLE_MODE_ONLY ==
                     context.getResources().getInteger(org.lineageos.platform.internal.R.integer
                             .config_deviceSupportsKeyboardBrightnessControl);
@@ -78,7 +78,7 @@ public class ButtonBacklightBrightness extends CustomDialogPref<AlertDialog> imp
                     LineageSettings.Secure.KEYBOARD_BRIGHTNESS, isSingleValue);
             mActiveControl = mKeyboardBrightness;
         }
-        if (DeviceUtils.hasButtonBacklightSupport(context)) {
+        if (DeviceCapabilities.get(context).hasButtonBacklightSupport()) {
             final boolean isSingleValue = BUTTON_BRIGHTNESS_TOGGLE_MODE_ONLY ==
                     context.getResources().getInteger(org.lineageos.platform.internal.R.integer
                             .config_deviceSupportsButtonBrightnessControl);
@@ -21,7 +21,7 @@ import android.app.Dialog;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.pm.PackageInfo;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.os.Bundle;
@@ -33,9 +33,6 @@ import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.AdapterView.OnItemClickListener;
-import android.widget.ListView;
 
 import androidx.preference.SwitchPreference;
 import androidx.preference.ListPreference;
@@ -49,12 +46,13 @@ import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
 
 import com.crdroid.settings.preferences.PackageListAdapter;
-import com.crdroid.settings.preferences.PackageListAdapter.PackageItem;
+import com.crdroid.settings.utils.AppIconCache;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class SensorBlock extends SettingsPreferenceFragment
         implements Preference.OnPreferenceClickListener {
@@ -103,6 +101,12 @@ public class SensorBlock extends SettingsPreferenceFragment
         refreshCustomApplicationPrefs();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mPackageAdapter.destroy();
+    }
+
     @Override
     public int getMetricsCategory() {
         return MetricsProto.MetricsEvent.CRDROID_SETTINGS;
@@ -122,28 +126,21 @@ public class SensorBlock extends SettingsPreferenceFragment
     @Override
     public Dialog onCreateDialog(int id) {
         AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
-        final Dialog dialog;
-        final ListView list = new ListView(getActivity());
-        list.setAdapter(mPackageAdapter);
-        list.setDivider(null);
+        final View pickerView = mPackageAdapter.inflatePickerView(getActivity());
 
         builder.setTitle(R.string.choose_app);
-        builder.setView(list);
-        dialog = builder.create();
+        builder.setView(pickerView);
 
         switch (id) {
             case DIALOG_BLOCKED_APPS:
-                list.setOnItemClickListener(new OnItemClickListener() {
-                    @Override
-                    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                        // Add empty application definition, the user will be able to edit it later
-                        PackageItem info = (PackageItem) parent.getItemAtPosition(position);
-                        addCustomApplicationPref(info.packageName, mBlockedPackages);
-                        dialog.cancel();
-                    }
-                });
+                // Blocked apps start ticked, so unticking them removes them
+                mPackageAdapter.setSelectedPackages(mBlockedPackages.keySet());
+                builder.setPositiveButton(android.R.string.ok, (dialog, which) ->
+                        applySelection(mPackageAdapter.getSelectedPackages(), mBlockedPackages));
+                builder.setNegativeButton(android.R.string.cancel, null);
+                break;
         }
-        return dialog;
+        return builder.create();
     }
 
     public static void reset(Context mContext) {
@@ -189,27 +186,45 @@ public class SensorBlock extends SettingsPreferenceFragment
     };
 
     private void refreshCustomApplicationPrefs() {
-        if (!parsePackageList()) {
-            return;
+        if (parsePackageList()) {
+            updatePreferences();
         }
+    }
 
+    private void updatePreferences() {
         // Add the Application Preferences
         if (mSensorBlockPrefList != null) {
-            mSensorBlockPrefList.removeAll();
+            // Drop the preferences of packages no longer blocked
+            for (int i = mSensorBlockPrefList.getPreferenceCount() - 1; i >= 0; i--) {
+                Preference pref = mSensorBlockPrefList.getPreference(i);
+                if (pref != mAddSensorBlockPref && !mBlockedPackages.containsKey(pref.getKey())) {
+                    mSensorBlockPrefList.removePreference(pref);
+                }
+            }
 
+            // Only newly blocked packages need a preference built
             for (Package pkg : mBlockedPackages.values()) {
-                try {
-                    Preference pref = createPreferenceFromInfo(pkg);
-                    mSensorBlockPrefList.addPreference(pref);
-                } catch (PackageManager.NameNotFoundException e) {
-                    // Do nothing
-                }
+                addPreferenceIfMissing(pkg);
             }
 
             // Keep these at the top
             mAddSensorBlockPref.setOrder(0);
             // Add 'add' options
-            mSensorBlockPrefList.addPreference(mAddSensorBlockPref);
+            if (mSensorBlockPrefList.findPreference(mAddSensorBlockPref.getKey()) == null) {
+                mSensorBlockPrefList.addPreference(mAddSensorBlockPref);
+            }
+        }
+    }
+
+    private void addPreferenceIfMissing(Package pkg) {
+        if (mSensorBlockPrefList.findPreference(pkg.name) != null) {
+            return;
+        }
+        try {
+            Preference pref = createPreferenceFromInfo(pkg);
+            mSensorBlockPrefList.addPreference(pref);
+        } catch (PackageManager.NameNotFoundException e) {
+            // Do nothing
         }
     }
 
@@ -237,26 +252,33 @@ public class SensorBlock extends SettingsPreferenceFragment
         return true;
     }
 
-    private void addCustomApplicationPref(String packageName, Map<String,Package> map) {
-        Package pkg = map.get(packageName);
-        if (pkg == null) {
-            pkg = new Package(packageName);
-            map.put(packageName, pkg);
-            savePackageList(false, map);
-            refreshCustomApplicationPrefs();
+    /**
+     * Makes the map match the picked packages with a single settings write.
+     */
+    private void applySelection(Set<String> selected, Map<String,Package> map) {
+        boolean changed = map.keySet().retainAll(selected);
+        for (String packageName : selected) {
+            if (!map.containsKey(packageName)) {
+                map.put(packageName, new Package(packageName));
+                changed = true;
+            }
+        }
+        if (changed) {
+            savePackageList(true, map);
+            updatePreferences();
         }
     }
 
     private Preference createPreferenceFromInfo(Package pkg)
             throws PackageManager.NameNotFoundException {
-        PackageInfo info = mPackageManager.getPackageInfo(pkg.name,
-                PackageManager.GET_META_DATA);
+        ApplicationInfo info = mPackageManager.getApplicationInfo(pkg.name, 0);
         Preference pref =
                 new Preference(getActivity());
 
         pref.setKey(pkg.name);
-        pref.setTitle(info.applicationInfo.loadLabel(mPackageManager));
-        pref.setIcon(info.applicationInfo.loadIcon(mPackageManager));
+        pref.setTitle(info.loadLabel(mPackageManager));
+        AppIconCache.getInstance(getActivity()).loadIcon(info,
+                (packageName, icon) -> pref.setIcon(icon));
         pref.setPersistent(false);
         pref.setOnPreferenceClickListener(this);
         return pref;
@@ -264,8 +286,11 @@ public class SensorBlock extends SettingsPreferenceFragment
 
     private void removeApplicationPref(String packageName, Map<String,Package> map) {
         if (map.remove(packageName) != null) {
-            savePackageList(false, map);
-            refreshCustomApplicationPrefs();
+            savePackageList(true, map);
+            Preference pref = mSensorBlockPrefList.findPreference(packageName);
+            if (pref != null) {
+                mSensorBlockPrefList.removePreference(pref);
+            }
         }
     }
 
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.notifications.notificationlight;
+
+/**
+ * Reads and writes the per-app values of NOTIFICATION_LIGHT_PULSE_CUSTOM_VALUES.
+ *
+ * The setting is also parsed by the framework, so the layout stays
+ * {@code pkg=color;on;off|pkg=color;on;off}. Entries are scanned in place without
+ * regex splitting or intermediate arrays, and malformed entries are skipped the
+ * same way the old split based parser did.
+ */
+final class CustomLightsCodec {
+
+    static final char ENTRY_SEPARATOR = '|';
+    static final char NAME_SEPARATOR = '=';
+    static final char VALUE_SEPARATOR = ';';
+
+    interface Sink {
+        void onEntry(String name, int color, int timeOn, int timeOff);
+    }
+
+    private CustomLightsCodec() {}
+
+    static void decode(String value, Sink sink) {
+        if (value == null) {
+            return;
+        }
+        final int length = value.length();
+        int start = 0;
+        while (start < length) {
+            int end = value.indexOf(ENTRY_SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            decodeEntry(value, start, end, sink);
+            start = end + 1;
+        }
+    }
+
+    static void encode(StringBuilder out, String name, int color, int timeOn, int timeOff) {
+        out.append(name)
+                .append(NAME_SEPARATOR).append(color)
+                .append(VALUE_SEPARATOR).append(timeOn)
+                .append(VALUE_SEPARATOR).append(timeOff);
+    }
+
+    private static void decodeEntry(String value, int start, int end, Sink sink) {
+        final int nameEnd = indexOf(value, NAME_SEPARATOR, start, end);
+        if (nameEnd < 0 || indexOf(value, NAME_SEPARATOR, nameEnd + 1, end) >= 0) {
+            return;
+        }
+        final int colorEnd = indexOf(value, VALUE_SEPARATOR, nameEnd + 1, end);
+        final int onEnd = colorEnd < 0 ? -1 : indexOf(value, VALUE_SEPARATOR, colorEnd + 1, end);
+        if (onEnd < 0 || indexOf(value, VALUE_SEPARATOR, onEnd + 1, end) >= 0) {
+            return;
+        }
+
+        final long color = parseInt(value, nameEnd + 1, colorEnd);
+        final long timeOn = parseInt(value, colorEnd + 1, onEnd);
+        final long timeOff = parseInt(value, onEnd + 1, end);
+        if (color == Long.MIN_VALUE || timeOn == Long.MIN_VALUE || timeOff == Long.MIN_VALUE) {
+            return;
+        }
+        sink.onEntry(value.substring(start, nameEnd), (int) color, (int) timeOn, (int) timeOff);
+    }
+
+    private static int indexOf(String value, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a signed decimal int as Integer.parseInt does, returning Long.MIN_VALUE
+     * when it is not one.
+     */
+    private static long parseInt(String value, int start, int end) {
+        if (start >= end) {
+            return Long.MIN_VALUE;
+        }
+        boolean negative = false;
+        int i = start;
+        final char first = value.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                return Long.MIN_VALUE;
+            }
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            // Character.digit, like Integer.parseInt, also takes non-ASCII digits
+            final int digit = Character.digit(value.charAt(i), 10);
+            if (digit < 0) {
+                return Long.MIN_VALUE;
+            }
+            result = result * 10 + digit;
+            if (result > (long) Integer.MAX_VALUE + 1) {
+                return Long.MIN_VALUE;
+            }
+        }
+        result = negative ? -result : result;
+        return result < Integer.MIN_VALUE || result > Integer.MAX_VALUE
+                ? Long.MIN_VALUE : result;
+    }
+}
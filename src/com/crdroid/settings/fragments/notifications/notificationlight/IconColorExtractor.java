@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.notifications.notificationlight;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.crdroid.settings.utils.AppIconCache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import lineageos.util.ColorUtils;
+
+/**
+ * Picks the dominant notification light color of app icons off the main thread.
+ *
+ * Colors are computed on a small downsampled copy of the cached list icon and
+ * remembered per package and versionCode, both in memory and in shared preferences.
+ */
+final class IconColorExtractor {
+
+    private static final String PREFS_NAME = "notification_light_icon_colors";
+    // Edge of the bitmap the color is computed on
+    private static final int SAMPLE_SIZE = 32;
+
+    private static IconColorExtractor sInstance;
+
+    interface Callback {
+        /**
+         * Called on the main thread with the colors of every package that still exists.
+         */
+        void onColorsExtracted(Map<String, Integer> colors);
+    }
+
+    private final Context mContext;
+    private final PackageManager mPm;
+    private final AppIconCache mIconCache;
+    private final SharedPreferences mPrefs;
+    private final Map<String, Integer> mColors = new HashMap<>();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    static synchronized IconColorExtractor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new IconColorExtractor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private IconColorExtractor(Context context) {
+        mContext = context;
+        mPm = context.getPackageManager();
+        mIconCache = AppIconCache.getInstance(context);
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Extracts the colors of all given packages as one job, delivering them together.
+     */
+    void extract(List<String> packageNames, Callback callback) {
+        mExecutor.execute(() -> {
+            final Map<String, Integer> result = new HashMap<>();
+            final SharedPreferences.Editor editor = mPrefs.edit();
+            Set<String> storedKeys = null;
+            boolean dirty = false;
+
+            for (String packageName : packageNames) {
+                final ApplicationInfo info;
+                try {
+                    info = mPm.getApplicationInfo(packageName, 0);
+                } catch (PackageManager.NameNotFoundException e) {
+                    continue;
+                }
+
+                final String key = packageName + '@' + info.longVersionCode;
+                Integer color = mColors.get(key);
+                if (color == null && mPrefs.contains(key)) {
+                    color = mPrefs.getInt(key, 0);
+                    mColors.put(key, color);
+                }
+                if (color == null) {
+                    color = computeColor(info);
+                    if (color == null) {
+                        continue;
+                    }
+                    mColors.put(key, color);
+                    editor.putInt(key, color);
+                    dirty = true;
+
+                    // Drop the colors of earlier versions of the package
+                    if (storedKeys == null) {
+                        storedKeys = mPrefs.getAll().keySet();
+                    }
+                    final String prefix = packageName + '@';
+                    for (String stored : storedKeys) {
+                        if (stored.startsWith(prefix) && !stored.equals(key)) {
+                            editor.remove(stored);
+                            mColors.remove(stored);
+                        }
+                    }
+                }
+                result.put(packageName, color);
+            }
+
+            if (dirty) {
+                editor.apply();
+            }
+            mMainHandler.post(() -> callback.onColorsExtracted(result));
+        });
+    }
+
+    private Integer computeColor(ApplicationInfo info) {
+        final Drawable icon = mIconCache.getIcon(info);
+        if (icon == null) {
+            return null;
+        }
+        final Bitmap sample = Bitmap.createBitmap(SAMPLE_SIZE, SAMPLE_SIZE,
+                Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(sample);
+        icon.setBounds(0, 0, SAMPLE_SIZE, SAMPLE_SIZE);
+        icon.draw(canvas);
+        final int color = ColorUtils.generateAlertColorFromDrawable(
+                new BitmapDrawable(mContext.getResources(), sample));
+        sample.recycle();
+        return color;
+    }
+}
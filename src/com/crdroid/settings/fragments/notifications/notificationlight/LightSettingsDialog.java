@@ -23,11 +23,8 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.content.Context;
-import android.graphics.Color;
 import android.graphics.PixelFormat;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.text.InputFilter;
@@ -53,22 +50,27 @@ import org.lineageos.internal.notification.LineageNotification;
 
 import com.android.settings.R;
 
+import com.crdroid.settings.preferences.colorpicker.ColorMath;
+import com.crdroid.settings.preferences.colorpicker.ColorPickerPanelView;
+import com.crdroid.settings.preferences.colorpicker.ColorPickerView;
+import com.crdroid.settings.preferences.colorpicker.WallpaperSwatches;
+
 import java.util.ArrayList;
-import java.util.Locale;
 
 public class LightSettingsDialog extends AlertDialog implements
         ColorPickerView.OnColorChangedListener, TextWatcher, OnFocusChangeListener {
 
     private final static String STATE_KEY_COLOR = "LightSettingsDialog:color";
-    // Minimum delay between LED notification updates
+    // Minimum delay between LED notification updates while dragging
     private final static long LED_UPDATE_DELAY_MS = 250;
 
     private ColorPickerView mColorPicker;
     private LinearLayout mColorPanel;
+    private LinearLayout mSwatches;
     private View mLightsDialogDivider;
 
     private EditText mHexColorInput;
-    private ColorPanelView mNewColor;
+    private ColorPickerPanelView mNewColor;
     private PulseSpeedAdapter mPulseSpeedAdapterOn;
     private PulseSpeedAdapter mPulseSpeedAdapterOff;
     private Spinner mPulseSpeedOn;
@@ -143,12 +145,13 @@ public class LightSettingsDialog extends AlertDialog implements
         mColorPicker = (ColorPickerView) layout.findViewById(R.id.color_picker_view);
         mColorPanel = (LinearLayout) layout.findViewById(R.id.color_panel_view);
         mHexColorInput = (EditText) layout.findViewById(R.id.hex_color_input);
-        mNewColor = (ColorPanelView) layout.findViewById(R.id.color_panel);
+        mNewColor = (ColorPickerPanelView) layout.findViewById(R.id.color_panel);
         mLightsDialogDivider = (View) layout.findViewById(R.id.lights_dialog_divider);
         mPulseSpeedOn = (Spinner) layout.findViewById(R.id.on_spinner);
         mPulseSpeedOff = (Spinner) layout.findViewById(R.id.off_spinner);
 
         mColorPicker.setOnColorChangedListener(this);
+        mColorPicker.setOnColorCommitListener(c -> updateLed(), LED_UPDATE_DELAY_MS);
         mColorPicker.setColor(color, true);
 
         mHexColorInput.setOnFocusChangeListener(this);
@@ -184,6 +187,9 @@ public class LightSettingsDialog extends AlertDialog implements
             mColorPicker.setVisibility(View.GONE);
             mColorPanel.setVisibility(View.GONE);
             mLightsDialogDivider.setVisibility(View.GONE);
+        } else {
+            mSwatches = layout.findViewById(R.id.wallpaper_swatches);
+            WallpaperSwatches.getInstance(mContext).bindRow(mSwatches, mColorPicker);
         }
 
         mLedBrightness = brightness;
@@ -225,6 +231,9 @@ public class LightSettingsDialog extends AlertDialog implements
     public void onStop() {
         super.onStop();
         dismissLed();
+        if (mSwatches != null) {
+            WallpaperSwatches.getInstance(mContext).unbindRow(mSwatches);
+        }
     }
 
     @Override
@@ -235,14 +244,8 @@ public class LightSettingsDialog extends AlertDialog implements
 
     @Override
     public void onColorChanged(int color) {
-        final boolean hasAlpha = mColorPicker.isAlphaSliderVisible();
-        final String format = hasAlpha ? "%08x" : "%06x";
-        final int mask = hasAlpha ? 0xFFFFFFFF : 0x00FFFFFF;
-
         mNewColor.setColor(color);
-        mHexColorInput.setText(String.format(Locale.US, format, color & mask));
-
-        updateLed();
+        mHexColorInput.setText(ColorMath.toHex(color, mColorPicker.isAlphaSliderVisible()));
     }
 
     public void setAlphaSliderVisible(boolean visible) {
@@ -281,12 +284,6 @@ public class LightSettingsDialog extends AlertDialog implements
         mPulseSpeedOff.setSelection(mPulseSpeedAdapterOff.getTimePosition(speedOff));
     }
 
-    private Handler mLedHandler = new Handler() {
-        public void handleMessage(Message msg) {
-            updateLed();
-        }
-    };
-
     private void updateLed() {
         if (!mReadyForLed) {
             return;
@@ -307,12 +304,6 @@ public class LightSettingsDialog extends AlertDialog implements
             return;
         }
 
-        // Dampen rate of consecutive LED changes
-        if (mLedHandler.hasMessages(0)) {
-            return;
-        }
-        mLedHandler.sendEmptyMessageDelayed(0, LED_UPDATE_DELAY_MS);
-
         // Set a notification to display the LED color
         final Bundle b = new Bundle();
         b.putBoolean(LineageNotification.EXTRA_FORCE_SHOW_LIGHTS, true);
@@ -457,7 +448,7 @@ public class LightSettingsDialog extends AlertDialog implements
         String hexColor = mHexColorInput.getText().toString();
         if (!hexColor.isEmpty()) {
             try {
-                int color = Color.parseColor('#' + hexColor);
+                int color = ColorMath.parseHex(hexColor);
                 if (!mColorPicker.isAlphaSliderVisible()) {
                     color |= 0xFF000000; // set opaque
                 }
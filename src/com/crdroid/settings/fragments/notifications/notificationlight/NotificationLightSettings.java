@@ -20,19 +20,19 @@ package com.crdroid.settings.fragments.notifications.notificationlight;
 import android.app.Dialog;
 import android.content.ContentResolver;
 import android.content.Context;
-import android.content.pm.PackageInfo;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
-import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.preference.Preference;
@@ -45,20 +45,20 @@ import com.android.settingslib.search.SearchIndexable;
 import com.android.settings.SettingsPreferenceFragment;
 import com.android.internal.logging.nano.MetricsProto;
 import com.crdroid.settings.preferences.PackageListAdapter;
-import com.crdroid.settings.preferences.PackageListAdapter.PackageItem;
+import com.crdroid.settings.utils.AppIconCache;
 
 import org.lineageos.internal.notification.LightsCapabilities;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import lineageos.preference.LineageSystemSettingSwitchPreference;
 import lineageos.preference.SystemSettingMainSwitchPreference;
 import lineageos.providers.LineageSettings;
-import lineageos.util.ColorUtils;
 
 @SearchIndexable
 public class NotificationLightSettings extends SettingsPreferenceFragment implements
@@ -93,6 +93,7 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
     public static final int ACTION_TEST = 0;
     public static final int ACTION_DELETE = 1;
     private static final int DIALOG_APPS = 0;
+    private static final int MENU_AUTO_COLOR = Menu.FIRST;
 
     private int mDefaultColor;
     private int mDefaultLedOn;
@@ -207,6 +208,7 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
             resetColors();
             mGeneralPrefs.removePreference(mAutoGenerateColors);
         } else {
+            setHasOptionsMenu(true);
             mAutoGenerateColors.setOnPreferenceChangeListener(this);
             //watch(LineageSettings.System.getUriFor(NOTIFICATION_LIGHT_COLOR_AUTO));
         }
@@ -262,6 +264,14 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mPackageAdapter != null) {
+            mPackageAdapter.destroy();
+        }
+    }
+
     @Override
     public void onStart() {
         super.onStart();
@@ -299,29 +309,42 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
             return;
         }
 
+        updateApplicationPrefs();
+    }
+
+    private void updateApplicationPrefs() {
+        Context context = getActivity();
+
         // Add the Application Preferences
         if (mApplicationPrefList != null) {
-            for (int i = 0; i < mApplicationPrefList.getPreferenceCount();) {
+            // Drop rows of removed packages along with the empty list hint
+            for (int i = mApplicationPrefList.getPreferenceCount() - 1; i >= 0; i--) {
                 Preference pref = mApplicationPrefList.getPreference(i);
                 if (ADD_APPS.equals(pref.getKey())) {
-                    i++;
                     continue;
                 }
-
-                mApplicationPrefList.removePreference(pref);
+                if (pref.getKey() == null || !mPackages.containsKey(pref.getKey())) {
+                    mApplicationPrefList.removePreference(pref);
+                }
             }
 
             for (Package pkg : mPackages.values()) {
+                ApplicationLightPreference existing =
+                        mApplicationPrefList.findPreference(pkg.name);
+                if (existing != null) {
+                    existing.setAllValues(pkg.color, pkg.timeon, pkg.timeoff);
+                    continue;
+                }
                 try {
-                    PackageInfo info = mPackageManager.getPackageInfo(pkg.name,
-                            PackageManager.GET_META_DATA);
+                    ApplicationInfo info = mPackageManager.getApplicationInfo(pkg.name, 0);
                     ApplicationLightPreference pref =
                             new ApplicationLightPreference(context, null,
                                     pkg.color, pkg.timeon, pkg.timeoff);
 
                     pref.setKey(pkg.name);
-                    pref.setTitle(info.applicationInfo.loadLabel(mPackageManager));
-                    pref.setIcon(info.applicationInfo.loadIcon(mPackageManager));
+                    pref.setTitle(info.loadLabel(mPackageManager));
+                    AppIconCache.getInstance(context).loadIcon(info,
+                            (packageName, icon) -> pref.setIcon(icon));
                     pref.setPersistent(false);
                     pref.setOnPreferenceChangeListener(this);
                     pref.setOnLongClickListener(this);
@@ -332,7 +355,6 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
             }
 
             maybeDisplayApplicationHint(context);
-            mPackageAdapter.setExcludedPackages(new HashSet<String>(mPackages.keySet()));
         }
     }
 
@@ -350,36 +372,91 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         }
     }
 
-    private int getInitialColorForPackage(String packageName) {
-        boolean autoColor = LineageSettings.System.getIntForUser(getActivity().getContentResolver(),
+    private boolean isAutoColorEnabled() {
+        return LineageSettings.System.getIntForUser(getActivity().getContentResolver(),
                 NOTIFICATION_LIGHT_COLOR_AUTO, mMultiColorLed ? 1 : 0, UserHandle.USER_CURRENT) == 1;
-        int color = mDefaultColor;
-        if (autoColor) {
-            try {
-                Drawable icon = mPackageManager.getApplicationIcon(packageName);
-                color = ColorUtils.generateAlertColorFromDrawable(icon);
-            } catch (NameNotFoundException e) {
-                // shouldn't happen, but just return default
+    }
+
+    /**
+     * Makes the configured apps match the picked packages. Removals are written
+     * right away, new apps get their automatic colors in one background job first
+     * and are written together once it is done.
+     */
+    private void applyPackageSelection(Set<String> selected) {
+        final List<String> added = new ArrayList<>();
+        for (String packageName : selected) {
+            if (!mPackages.containsKey(packageName)) {
+                added.add(packageName);
             }
         }
-        return color;
+        final boolean autoColor = !added.isEmpty() && isAutoColorEnabled();
+
+        if (mPackages.keySet().retainAll(selected) && (added.isEmpty() || autoColor)) {
+            savePackageList(true);
+            updateApplicationPrefs();
+            getActivity().invalidateOptionsMenu();
+        }
+
+        if (added.isEmpty()) {
+            return;
+        }
+        if (!autoColor) {
+            addCustomApplicationPrefs(added, Collections.emptyMap());
+            return;
+        }
+        IconColorExtractor.getInstance(getActivity()).extract(added, colors -> {
+            if (isAdded()) {
+                addCustomApplicationPrefs(added, colors);
+            }
+        });
     }
 
-    private void addCustomApplicationPref(String packageName) {
-        Package pkg = mPackages.get(packageName);
-        if (pkg == null) {
-            int color = getInitialColorForPackage(packageName);
-            pkg = new Package(packageName, color, mDefaultLedOn, mDefaultLedOff);
-            mPackages.put(packageName, pkg);
-            savePackageList(false);
-            refreshCustomApplicationPrefs();
+    private void addCustomApplicationPrefs(List<String> packageNames,
+            Map<String, Integer> colors) {
+        for (String packageName : packageNames) {
+            mPackages.putIfAbsent(packageName, new Package(packageName,
+                    colors.getOrDefault(packageName, mDefaultColor),
+                    mDefaultLedOn, mDefaultLedOff));
         }
+        savePackageList(true);
+        updateApplicationPrefs();
+        getActivity().invalidateOptionsMenu();
+    }
+
+    /**
+     * Recomputes the color of every configured app from its icon as one background
+     * job, then writes the setting once.
+     */
+    private void autoColorAllApplications() {
+        IconColorExtractor.getInstance(getActivity()).extract(
+                new ArrayList<>(mPackages.keySet()), colors -> {
+            if (!isAdded()) {
+                return;
+            }
+            boolean changed = false;
+            for (Map.Entry<String, Integer> entry : colors.entrySet()) {
+                Package pkg = mPackages.get(entry.getKey());
+                if (pkg == null || !pkg.setValues(entry.getValue(), pkg.timeon, pkg.timeoff)) {
+                    continue;
+                }
+                changed = true;
+                ApplicationLightPreference pref =
+                        mApplicationPrefList.findPreference(pkg.name);
+                if (pref != null) {
+                    pref.setAllValues(pkg.color, pkg.timeon, pkg.timeoff);
+                }
+            }
+            if (changed) {
+                savePackageList(true);
+            }
+        });
     }
 
     private void removeCustomApplicationPref(String packageName) {
         if (mPackages.remove(packageName) != null) {
-            savePackageList(false);
-            refreshCustomApplicationPrefs();
+            savePackageList(true);
+            updateApplicationPrefs();
+            getActivity().invalidateOptionsMenu();
         }
     }
 
@@ -395,30 +472,25 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         mPackageList = baseString;
         mPackages.clear();
 
-        if (baseString != null) {
-            final String[] array = TextUtils.split(baseString, "\\|");
-            for (String item : array) {
-                if (TextUtils.isEmpty(item)) {
-                    continue;
-                }
-                Package pkg = Package.fromString(item);
-                if (pkg != null) {
-                    mPackages.put(pkg.name, pkg);
-                }
-            }
-        }
-
-        mPackageAdapter.setExcludedPackages(new HashSet<>(mPackages.keySet()));
+        CustomLightsCodec.decode(baseString, (name, color, timeOn, timeOff) ->
+                mPackages.put(name, new Package(name, color, timeOn, timeOff)));
 
         return true;
     }
 
     private void savePackageList(boolean preferencesUpdated) {
-        List<String> settings = new ArrayList<>();
+        // Unchanged entries reuse their encoded form, only edited ones are re-encoded
+        StringBuilder builder = new StringBuilder();
         for (Package app : mPackages.values()) {
-            settings.add(app.toString());
+            if (builder.length() > 0) {
+                builder.append(CustomLightsCodec.ENTRY_SEPARATOR);
+            }
+            builder.append(app.toString());
+        }
+        final String value = builder.toString();
+        if (TextUtils.equals(value, mPackageList)) {
+            return;
         }
-        final String value = TextUtils.join("|", settings);
         if (preferencesUpdated) {
             mPackageList = value;
         }
@@ -466,10 +538,7 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
 
         // Find the custom package and sets its new values
         Package app = mPackages.get(packageName);
-        if (app != null) {
-            app.color = color;
-            app.timeon = timeon;
-            app.timeoff = timeoff;
+        if (app != null && app.setValues(color, timeon, timeoff)) {
             savePackageList(true);
         }
     }
@@ -529,24 +598,16 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
         final Dialog dialog;
         switch (id) {
             case DIALOG_APPS:
-                Resources res = getResources();
-                int paddingTop = res.getDimensionPixelOffset(R.dimen.package_list_padding_top);
-
-                final ListView list = new ListView(getActivity());
-                list.setAdapter(mPackageAdapter);
-                list.setDivider(null);
-                list.setPadding(0, paddingTop, 0, 0);
+                final View pickerView = mPackageAdapter.inflatePickerView(getActivity());
 
+                // Configured apps start ticked, so unticking them removes them
+                mPackageAdapter.setSelectedPackages(mPackages.keySet());
                 builder.setTitle(R.string.choose_app);
-                builder.setView(list);
+                builder.setView(pickerView);
+                builder.setPositiveButton(android.R.string.ok, (d, which) ->
+                        applyPackageSelection(mPackageAdapter.getSelectedPackages()));
+                builder.setNegativeButton(android.R.string.cancel, null);
                 dialog = builder.create();
-
-                list.setOnItemClickListener((parent, view, position, id1) -> {
-                    // Add empty application definition, the user will be able to edit it later
-                    PackageItem info = (PackageItem) parent.getItemAtPosition(position);
-                    addCustomApplicationPref(info.packageName);
-                    dialog.cancel();
-                });
                 break;
             default:
                 dialog = null;
@@ -558,53 +619,63 @@ public class NotificationLightSettings extends SettingsPreferenceFragment implem
      * Application class
      */
     private static class Package {
-        public String name;
-        public Integer color;
-        public Integer timeon;
-        public Integer timeoff;
+        public final String name;
+        public int color;
+        public int timeon;
+        public int timeoff;
+        // Encoded form, dropped whenever a value changes
+        private String mEncoded;
 
         /**
          * Stores all the application values in one call
          */
-        public Package(String name, Integer color, Integer timeon, Integer timeoff) {
+        public Package(String name, int color, int timeon, int timeoff) {
             this.name = name;
             this.color = color;
             this.timeon = timeon;
             this.timeoff = timeoff;
         }
 
-        public String toString() {
-            StringBuilder builder = new StringBuilder();
-            builder.append(name);
-            builder.append("=");
-            builder.append(color);
-            builder.append(";");
-            builder.append(timeon);
-            builder.append(";");
-            builder.append(timeoff);
-            return builder.toString();
-        }
-
-        public static Package fromString(String value) {
-            if (TextUtils.isEmpty(value)) {
-                return null;
+        /**
+         * Returns whether any value actually changed.
+         */
+        public boolean setValues(int color, int timeon, int timeoff) {
+            if (this.color == color && this.timeon == timeon && this.timeoff == timeoff) {
+                return false;
             }
-            String[] app = value.split("=", -1);
-            if (app.length != 2)
-                return null;
-
-            String[] values = app[1].split(";", -1);
-            if (values.length != 3)
-                return null;
-
-            try {
-                return new Package(app[0], Integer.parseInt(values[0]), Integer
-                        .parseInt(values[1]), Integer.parseInt(values[2]));
-            } catch (NumberFormatException e) {
-                return null;
+            this.color = color;
+            this.timeon = timeon;
+            this.timeoff = timeoff;
+            mEncoded = null;
+            return true;
+        }
+
+        public String toString() {
+            if (mEncoded == null) {
+                StringBuilder builder = new StringBuilder();
+                CustomLightsCodec.encode(builder, name, color, timeon, timeoff);
+                mEncoded = builder.toString();
             }
+            return mEncoded;
         }
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        if (mMultiColorLed && mPackages != null && !mPackages.isEmpty()) {
+            menu.add(0, MENU_AUTO_COLOR, 0, R.string.notification_light_auto_color_all)
+                    .setShowAsActionFlags(MenuItem.SHOW_AS_ACTION_NEVER);
+        }
+    }
 
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case MENU_AUTO_COLOR:
+                autoColorAllApplications();
+                return true;
+        }
+        return false;
     }
 
     @Override
@@ -18,18 +18,27 @@ package com.crdroid.settings.fragments.ui;
 
 import android.app.ActivityManager;
 import android.annotation.Nullable;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
+import android.database.ContentObserver;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.provider.Settings;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.CompoundButton;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.SectionIndexer;
@@ -47,22 +56,54 @@ import com.android.settings.R;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import com.android.internal.util.crdroid.cutout.CutoutFullscreenController;
+import com.crdroid.settings.utils.AppIconCache;
+import com.crdroid.settings.utils.AppSearchIndex;
+import com.crdroid.settings.utils.PackageChangeMonitor;
 
 public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
-        implements ApplicationsState.Callbacks {
+        implements ApplicationsState.Callbacks, PackageChangeMonitor.Listener {
+
+    // Toggles landing within this window are written out together
+    private static final long TOGGLE_FLUSH_DELAY_MS = 300;
 
     private ActivityManager mActivityManager;
     private AllPackagesAdapter mAllPackagesAdapter;
     private ApplicationsState mApplicationsState;
     private ApplicationsState.Session mSession;
     private ActivityFilter mActivityFilter;
+    private AppIconCache mIconCache;
+    private PackageChangeMonitor mPackageMonitor;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private int mRebuildGeneration;
     private PackageManager mPackageManager;
     private RecyclerView mAppsRecyclerView;
 
-    private CutoutFullscreenController mCutoutForceFullscreenSettings;
+    // Snapshot of the configured packages, only touched on the main thread
+    private final Set<String> mForcedPackages = new HashSet<>();
+    // Toggles not yet written, package -> forced
+    private final Map<String, Boolean> mPendingToggles = new HashMap<>();
+    // Toggles handed to the executor whose write hasn't landed in the snapshot yet
+    private final Map<String, Boolean> mWritingToggles = new HashMap<>();
+
+    private final ContentObserver mForcedPackagesObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            refreshForcedPackages();
+        }
+    };
+
+    private final Runnable mFlushToggles = this::writePendingToggles;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -73,11 +114,18 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
         mSession = mApplicationsState.newSession(this);
         mSession.onResume();
         mPackageManager = context.getPackageManager();
+        mIconCache = AppIconCache.getInstance(context);
         mActivityManager = (ActivityManager) context.getSystemService(
                 Context.ACTIVITY_SERVICE);
         mActivityFilter = new ActivityFilter(mPackageManager);
         mAllPackagesAdapter = new AllPackagesAdapter(context);
-        mCutoutForceFullscreenSettings = new CutoutFullscreenController(context);
+        mPackageMonitor = PackageChangeMonitor.getInstance(context);
+        mPackageMonitor.addListener(this);
+
+        context.getContentResolver().registerContentObserver(
+                Settings.System.getUriFor(Settings.System.FORCE_FULLSCREEN_CUTOUT_APPS),
+                false, mForcedPackagesObserver);
+        refreshForcedPackages();
     }
 
     @Override
@@ -104,6 +152,20 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
         mAppsRecyclerView = view.findViewById(R.id.user_list_view);
         mAppsRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
         mAppsRecyclerView.setAdapter(mAllPackagesAdapter);
+
+        EditText search = view.findViewById(R.id.search);
+        search.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                mAllPackagesAdapter.setFilter(s.toString());
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {}
+        });
     }
 
     @Override
@@ -117,21 +179,156 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
     public void onDestroy() {
         super.onDestroy();
 
+        mPackageMonitor.removeListener(this);
+        getContext().getContentResolver().unregisterContentObserver(mForcedPackagesObserver);
+        mHandler.removeCallbacksAndMessages(null);
+        // Queue the last toggles before the executor stops taking work
+        writePendingToggles();
+        mExecutor.shutdown();
         mSession.onPause();
         mSession.onDestroy();
     }
 
     @Override
     public void onPackageListChanged() {
-        mActivityFilter.updateLauncherInfoList();
-        rebuild();
+        // Single package changes are patched in through PackageChangeMonitor
+    }
+
+    @Override
+    public void onPackageAdded(String packageName) {
+        refreshPackage(packageName);
+    }
+
+    @Override
+    public void onPackageChanged(String packageName) {
+        refreshPackage(packageName);
+    }
+
+    @Override
+    public void onPackageRemoved(String packageName) {
+        // Queued behind any pending refresh so the two can't land out of order
+        mExecutor.execute(() -> {
+            mActivityFilter.updateLauncherInfo(packageName);
+            mHandler.post(() -> mAllPackagesAdapter.removeEntry(packageName));
+        });
+    }
+
+    private void refreshForcedPackages() {
+        final ContentResolver resolver = getContext().getContentResolver();
+        mExecutor.execute(() -> {
+            final Set<String> packages = readForcedPackages(resolver);
+            mHandler.post(() -> {
+                mForcedPackages.clear();
+                mForcedPackages.addAll(packages);
+                mAllPackagesAdapter.notifyItemRangeChanged(0,
+                        mAllPackagesAdapter.getItemCount());
+            });
+        });
+    }
+
+    private static Set<String> readForcedPackages(ContentResolver resolver) {
+        final String value = Settings.System.getString(resolver,
+                Settings.System.FORCE_FULLSCREEN_CUTOUT_APPS);
+        final Set<String> packages = new LinkedHashSet<>();
+        if (!TextUtils.isEmpty(value)) {
+            for (String packageName : TextUtils.split(value, ",")) {
+                if (!TextUtils.isEmpty(packageName)) {
+                    packages.add(packageName);
+                }
+            }
+        }
+        return packages;
+    }
+
+    private boolean isForced(String packageName) {
+        Boolean toggle = mPendingToggles.get(packageName);
+        if (toggle == null) {
+            toggle = mWritingToggles.get(packageName);
+        }
+        return toggle != null ? toggle : mForcedPackages.contains(packageName);
+    }
+
+    private void setForced(String packageName, boolean forced) {
+        Boolean written = mWritingToggles.get(packageName);
+        if (written == null) {
+            written = mForcedPackages.contains(packageName);
+        }
+        if (forced == written) {
+            // Toggled back before the flush, nothing to write or force stop
+            mPendingToggles.remove(packageName);
+        } else {
+            mPendingToggles.put(packageName, forced);
+        }
+        mHandler.removeCallbacks(mFlushToggles);
+        if (!mPendingToggles.isEmpty()) {
+            mHandler.postDelayed(mFlushToggles, TOGGLE_FLUSH_DELAY_MS);
+        }
+    }
+
+    private void writePendingToggles() {
+        if (mPendingToggles.isEmpty()) {
+            return;
+        }
+        final Map<String, Boolean> toggles = new HashMap<>(mPendingToggles);
+        mPendingToggles.clear();
+        mWritingToggles.putAll(toggles);
+
+        // One settings write for the whole batch, CutoutFullscreenController
+        // picks the new value up through its own observer
+        final ContentResolver resolver = getContext().getContentResolver();
+        mExecutor.execute(() -> {
+            final Set<String> packages = readForcedPackages(resolver);
+            for (Map.Entry<String, Boolean> toggle : toggles.entrySet()) {
+                if (toggle.getValue()) {
+                    packages.add(toggle.getKey());
+                } else {
+                    packages.remove(toggle.getKey());
+                }
+            }
+            Settings.System.putString(resolver, Settings.System.FORCE_FULLSCREEN_CUTOUT_APPS,
+                    TextUtils.join(",", packages));
+
+            mHandler.post(() -> {
+                mForcedPackages.clear();
+                mForcedPackages.addAll(packages);
+                for (Map.Entry<String, Boolean> toggle : toggles.entrySet()) {
+                    mWritingToggles.remove(toggle.getKey(), toggle.getValue());
+                }
+            });
+
+            for (String packageName : toggles.keySet()) {
+                try {
+                    mActivityManager.forceStopPackage(packageName);
+                } catch (Exception ignored) {
+                }
+            }
+        });
+    }
+
+    private void refreshPackage(String packageName) {
+        final Context context = getContext();
+        // Package manager lookups stay on the executor, only the list patch is posted
+        mExecutor.execute(() -> {
+            mActivityFilter.updateLauncherInfo(packageName);
+            final ApplicationsState.AppEntry entry =
+                    mApplicationsState.getEntry(packageName, UserHandle.myUserId());
+            final boolean show = entry != null && mActivityFilter.filterApp(entry);
+            if (show) {
+                entry.ensureLabel(context);
+            }
+            mHandler.post(() -> {
+                mAllPackagesAdapter.removeEntry(packageName);
+                if (show) {
+                    mAllPackagesAdapter.insertEntry(entry);
+                }
+            });
+        });
     }
 
     @Override
     public void onRebuildComplete(ArrayList<ApplicationsState.AppEntry> entries) {
         if (entries != null) {
             handleAppEntries(entries);
-            mAllPackagesAdapter.notifyDataSetChanged();
         }
     }
 
@@ -147,7 +344,9 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
     public void onLauncherInfoChanged() {}
 
     @Override
-    public void onPackageIconChanged() {}
+    public void onPackageIconChanged() {
+        mAllPackagesAdapter.notifyItemRangeChanged(0, mAllPackagesAdapter.getItemCount());
+    }
 
     @Override
     public void onPackageSizeChanged(String packageName) {}
@@ -156,35 +355,45 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
     public void onRunningStateChanged(boolean running) {}
 
     private void handleAppEntries(List<ApplicationsState.AppEntry> entries) {
-        final ArrayList<String> sections = new ArrayList<String>();
-        final ArrayList<Integer> positions = new ArrayList<Integer>();
+        // Labels are already cached on the entries, so the section index can be
+        // built away from the main thread and handed over in one go
+        final int generation = ++mRebuildGeneration;
+        mExecutor.execute(() -> {
+            final ArrayList<String> sections = new ArrayList<String>();
+            final ArrayList<Integer> positions = new ArrayList<Integer>();
+            buildSections(entries, sections, positions);
+            mHandler.post(() -> {
+                if (generation == mRebuildGeneration) {
+                    mAllPackagesAdapter.setEntries(entries, sections, positions);
+                }
+            });
+        });
+    }
+
+    private static void buildSections(List<ApplicationsState.AppEntry> entries,
+            List<String> sections, List<Integer> positions) {
         String lastSectionIndex = null;
-        int offset = 0;
 
         for (int i = 0; i < entries.size(); i++) {
-            final ApplicationInfo info = entries.get(i).info;
-            final String label = (String) info.loadLabel(mPackageManager);
-            final String sectionIndex;
-
-            if (!info.enabled) {
-                sectionIndex = "--"; // XXX
-            } else if (TextUtils.isEmpty(label)) {
-                sectionIndex = "";
-            } else {
-                sectionIndex = label.substring(0, 1).toUpperCase();
-            }
+            final ApplicationsState.AppEntry entry = entries.get(i);
+            final String sectionIndex = getSectionIndex(entry.info, entry.label);
 
             if (lastSectionIndex == null ||
                     !TextUtils.equals(sectionIndex, lastSectionIndex)) {
                 sections.add(sectionIndex);
-                positions.add(offset);
+                positions.add(i);
                 lastSectionIndex = sectionIndex;
             }
-
-            offset++;
         }
+    }
 
-        mAllPackagesAdapter.setEntries(entries, sections, positions);
+    private static String getSectionIndex(ApplicationInfo info, String label) {
+        if (!info.enabled) {
+            return "--"; // XXX
+        } else if (TextUtils.isEmpty(label)) {
+            return "";
+        }
+        return label.substring(0, 1).toUpperCase();
     }
 
     private void rebuild() {
@@ -194,7 +403,13 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
     private class AllPackagesAdapter extends RecyclerView.Adapter<ViewHolder>
             implements SectionIndexer {
 
-        private List<ApplicationsState.AppEntry> mEntries = new ArrayList<>();
+        // mEntries is what is shown: mAllEntries itself or the subset matching mQuery
+        private List<ApplicationsState.AppEntry> mAllEntries = new ArrayList<>();
+        private List<ApplicationsState.AppEntry> mEntries = mAllEntries;
+        private final AppSearchIndex<ApplicationsState.AppEntry> mSearchIndex =
+                new AppSearchIndex<>();
+        private String mQuery = "";
+        private final Map<String, ApplicationsState.AppEntry> mEntriesByPackage = new HashMap<>();
         private String[] mSections;
         private int[] mPositions;
 
@@ -231,29 +446,40 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
 
             holder.title.setText(entry.label);
             holder.title.setOnClickListener(v -> holder.state.performClick());
-            mApplicationsState.ensureIcon(entry);
-            holder.icon.setImageDrawable(entry.info.loadIcon(mPackageManager));
+            if (entry.icon != null) {
+                // Already loaded by ApplicationsState's background thread
+                holder.icon.setTag(R.id.app_icon_cache_package, entry.info.packageName);
+                holder.icon.setImageDrawable(entry.icon);
+            } else {
+                mIconCache.loadIcon(entry.info, holder.icon);
+            }
             holder.state.setTag(entry);
-            holder.state.setChecked(mCutoutForceFullscreenSettings.shouldForceCutoutFullscreen(entry.info.packageName));
+            // Detach first so recycling the switch doesn't register as a toggle
+            holder.state.setOnCheckedChangeListener(null);
+            holder.state.setChecked(isForced(entry.info.packageName));
             holder.state.setOnCheckedChangeListener((buttonView, isChecked) -> {
                 final ApplicationsState.AppEntry appEntry =
                         (ApplicationsState.AppEntry) buttonView.getTag();
-
-                if (isChecked) {
-                    mCutoutForceFullscreenSettings.addApp(appEntry.info.packageName);
-                } else {
-                    mCutoutForceFullscreenSettings.removeApp(appEntry.info.packageName);
-                }
-                try{
-                    mActivityManager.forceStopPackage(appEntry.info.packageName);
-                } catch (Exception ignored) {
-                }
+                setForced(appEntry.info.packageName, isChecked);
             });
         }
 
         private void setEntries(List<ApplicationsState.AppEntry> entries,
                 List<String> sections, List<Integer> positions) {
-            mEntries = entries;
+            // Own copy, insertEntry/removeEntry patch it in place and the session's
+            // list must not change underneath it
+            mAllEntries = new ArrayList<>(entries);
+            mEntries = mAllEntries;
+            mEntriesByPackage.clear();
+            mSearchIndex.clear();
+            for (ApplicationsState.AppEntry entry : entries) {
+                mEntriesByPackage.put(entry.info.packageName, entry);
+                mSearchIndex.add(entry, entry.label, entry.info.packageName);
+            }
+            if (!mQuery.isEmpty()) {
+                applyFilter();
+                return;
+            }
             mSections = sections.toArray(new String[sections.size()]);
             mPositions = new int[positions.size()];
             for (int i = 0; i < positions.size(); i++) {
@@ -262,6 +488,99 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
             notifyDataSetChanged();
         }
 
+        private void setFilter(String query) {
+            mQuery = query;
+            if (mSections != null) {
+                applyFilter();
+            }
+        }
+
+        private void applyFilter() {
+            mEntries = mSearchIndex.filter(mQuery, mAllEntries);
+            rebuildSections();
+            notifyDataSetChanged();
+        }
+
+        private void insertEntry(ApplicationsState.AppEntry entry) {
+            if (mSections == null) {
+                // Not populated yet, the pending rebuild will pick it up
+                return;
+            }
+            int position = Collections.binarySearch(mAllEntries, entry,
+                    ApplicationsState.ALPHA_COMPARATOR);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            mAllEntries.add(position, entry);
+            mEntriesByPackage.put(entry.info.packageName, entry);
+            mSearchIndex.add(entry, entry.label, entry.info.packageName);
+            if (mEntries != mAllEntries) {
+                applyFilter();
+                return;
+            }
+
+            final String sectionIndex = getSectionIndex(entry.info, entry.label);
+            final int section = getSectionForPosition(position);
+            if (section >= 0 && TextUtils.equals(mSections[section], sectionIndex)) {
+                shiftSections(section + 1, 1);
+            } else if (section > 0 && mPositions[section] == position
+                    && TextUtils.equals(mSections[section - 1], sectionIndex)) {
+                shiftSections(section, 1);
+            } else {
+                rebuildSections();
+            }
+            notifyItemInserted(position);
+        }
+
+        private void removeEntry(String packageName) {
+            ApplicationsState.AppEntry entry = mEntriesByPackage.remove(packageName);
+            if (entry == null) {
+                return;
+            }
+            mSearchIndex.remove(entry);
+            if (mEntries != mAllEntries) {
+                mAllEntries.remove(entry);
+                applyFilter();
+                return;
+            }
+            final int position = Collections.binarySearch(mEntries, entry,
+                    ApplicationsState.ALPHA_COMPARATOR);
+            if (position < 0) {
+                return;
+            }
+            final int section = getSectionForPosition(position);
+            final int sectionEnd = section + 1 < mPositions.length
+                    ? mPositions[section + 1] : mEntries.size();
+            mEntries.remove(position);
+
+            if (sectionEnd - mPositions[section] > 1) {
+                shiftSections(section + 1, -1);
+            } else {
+                // Section vanished and its neighbours may merge
+                rebuildSections();
+            }
+            notifyItemRemoved(position);
+        }
+
+        private void shiftSections(int fromSection, int delta) {
+            for (int i = fromSection; i < mPositions.length; i++) {
+                mPositions[i] += delta;
+            }
+        }
+
+        private void rebuildSections() {
+            final ArrayList<String> sections = new ArrayList<String>();
+            final ArrayList<Integer> positions = new ArrayList<Integer>();
+            buildSections(mEntries, sections, positions);
+
+            mSections = sections.toArray(new String[sections.size()]);
+            mPositions = new int[positions.size()];
+            for (int i = 0; i < positions.size(); i++) {
+                mPositions[i] = positions.get(i);
+            }
+        }
+
         @Override
         public int getPositionForSection(int section) {
             if (section < 0 || section >= mSections.length) {
@@ -316,7 +635,7 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
     private class ActivityFilter implements ApplicationsState.AppFilter {
 
         private final PackageManager mPackageManager;
-        private final List<String> mLauncherResolveInfoList = new ArrayList<String>();
+        private final Set<String> mLauncherPackages = new HashSet<String>();
 
         private ActivityFilter(PackageManager packageManager) {
             this.mPackageManager = packageManager;
@@ -324,15 +643,31 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
             updateLauncherInfoList();
         }
 
+        public void updateLauncherInfo(String packageName) {
+            Intent i = new Intent(Intent.ACTION_MAIN);
+            i.addCategory(Intent.CATEGORY_LAUNCHER);
+            i.setPackage(packageName);
+            final boolean launchable =
+                    !mPackageManager.queryIntentActivities(i, 0).isEmpty();
+
+            synchronized (mLauncherPackages) {
+                if (launchable) {
+                    mLauncherPackages.add(packageName);
+                } else {
+                    mLauncherPackages.remove(packageName);
+                }
+            }
+        }
+
         public void updateLauncherInfoList() {
             Intent i = new Intent(Intent.ACTION_MAIN);
             i.addCategory(Intent.CATEGORY_LAUNCHER);
             List<ResolveInfo> resolveInfoList = mPackageManager.queryIntentActivities(i, 0);
 
-            synchronized (mLauncherResolveInfoList) {
-                mLauncherResolveInfoList.clear();
+            synchronized (mLauncherPackages) {
+                mLauncherPackages.clear();
                 for (ResolveInfo ri : resolveInfoList) {
-                    mLauncherResolveInfoList.add(ri.activityInfo.packageName);
+                    mLauncherPackages.add(ri.activityInfo.packageName);
                 }
             }
         }
@@ -342,13 +677,12 @@ public class DisplayCutoutForceFullscreenFragment extends PreferenceFragment
 
         @Override
         public boolean filterApp(ApplicationsState.AppEntry entry) {
-            boolean show = !mAllPackagesAdapter.mEntries.contains(entry.info.packageName);
-            if (show) {
-                synchronized (mLauncherResolveInfoList) {
-                    show = mLauncherResolveInfoList.contains(entry.info.packageName) && !entry.info.isSystemApp();
-                }
+            if (entry.info.isSystemApp()) {
+                return false;
+            }
+            synchronized (mLauncherPackages) {
+                return mLauncherPackages.contains(entry.info.packageName);
             }
-            return show;
         }
     }
 }
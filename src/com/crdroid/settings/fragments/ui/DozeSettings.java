@@ -46,6 +46,7 @@ import com.android.settingslib.search.SearchIndexable;
 import com.crdroid.settings.fragments.ui.doze.EdgeLightSettings;
 import com.crdroid.settings.fragments.ui.doze.Utils;
 import com.crdroid.settings.preferences.SecureSettingSeekBarPreference;
+import com.crdroid.settings.utils.DeviceCapabilities;
 
 import java.util.List;
 import java.util.ArrayList;
@@ -112,16 +113,17 @@ public class DozeSettings extends SettingsPreferenceFragment implements
         mDozeVibratePreference = (SecureSettingSeekBarPreference) findPreference(KEY_DOZE_GESTURE_VIBRATE);
 
         // Hide sensor related features if the device doesn't support them
-        if (!Utils.getTiltSensor(context) && !Utils.getPickupSensor(context)
-                && !Utils.getProximitySensor(context)) {
+        final DeviceCapabilities caps = DeviceCapabilities.get(context);
+        if (!caps.hasDozeTiltSensor() && !caps.hasDozePickupSensor()
+                && !caps.hasDozeProximitySensor()) {
             getPreferenceScreen().removePreference(dozeSensorCategory);
         } else {
-            if (!Utils.getTiltSensor(context)) {
+            if (!caps.hasDozeTiltSensor()) {
                 dozeSensorCategory.removePreference(mTiltPreference);
             } else {
                 mTiltPreference.setOnPreferenceChangeListener(this);
             }
-            if (!Utils.getPickupSensor(context)) {
+            if (!caps.hasDozePickupSensor()) {
                 dozeSensorCategory.removePreference(mPickUpPreference);
             } else {
                 boolean pickupGestureDefault = context.getResources().getBoolean(
@@ -132,7 +134,7 @@ public class DozeSettings extends SettingsPreferenceFragment implements
                 mPickUpPreference.setChecked(pickupGesture);
                 mPickUpPreference.setOnPreferenceChangeListener(this);
             }
-            if (!Utils.getProximitySensor(context)) {
+            if (!caps.hasDozeProximitySensor()) {
                 dozeSensorCategory.removePreference(mHandwavePreference);
                 dozeSensorCategory.removePreference(mPocketPreference);
             } else {
@@ -298,13 +300,14 @@ public class DozeSettings extends SettingsPreferenceFragment implements
                     }
 
                     keys.add(KEY_DOZE_GESTURE_VIBRATE);
-                    if (!Utils.getTiltSensor(context)) {
+                    final DeviceCapabilities caps = DeviceCapabilities.get(context);
+                    if (!caps.hasDozeTiltSensor()) {
                         keys.add(KEY_DOZE_TILT_GESTURE);
                     }
-                    if (!Utils.getPickupSensor(context)) {
+                    if (!caps.hasDozePickupSensor()) {
                         keys.add(KEY_DOZE_PICK_UP_GESTURE);
                     }
-                    if (!Utils.getProximitySensor(context)) {
+                    if (!caps.hasDozeProximitySensor()) {
                         keys.add(KEY_DOZE_HANDWAVE_GESTURE);
                         keys.add(KEY_DOZE_POCKET_GESTURE);
                     }
@@ -18,6 +18,9 @@ package com.crdroid.settings.fragments.ui.doze;
 import android.app.TimePickerDialog;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.location.LocationManager;
 import android.os.Bundle;
 import android.os.UserHandle;
 import android.provider.Settings;
@@ -35,7 +38,9 @@ import com.android.settings.SettingsPreferenceFragment;
 import com.crdroid.settings.preferences.SecureSettingListPreference;
 
 import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.ZoneId;
 
 public class AODSchedule extends SettingsPreferenceFragment implements
         Preference.OnPreferenceClickListener, Preference.OnPreferenceChangeListener {
@@ -45,16 +50,20 @@ public class AODSchedule extends SettingsPreferenceFragment implements
     private static final String SINCE_PREF_KEY = "doze_always_on_auto_since";
     private static final String TILL_PREF_KEY = "doze_always_on_auto_till";
 
-    private static final int MODE_DISABLED = 0;
-    private static final int MODE_NIGHT = 1;
-    private static final int MODE_TIME = 2;
-    private static final int MODE_MIXED_SUNSET = 3;
-    private static final int MODE_MIXED_SUNRISE = 4;
+    // Coarse location kept for the sunset and sunrise times, rounded to about 10km
+    private static final String LOCATION_PREFS_NAME = "aod_schedule_location";
+    private static final String LOCATION_LATITUDE = "latitude";
+    private static final String LOCATION_LONGITUDE = "longitude";
+    private static final double LOCATION_PRECISION = 10.0;
 
     private SecureSettingListPreference mModePref;
     private Preference mSincePref;
     private Preference mTillPref;
 
+    private AODScheduleEngine mEngine;
+    private double mLatitude = Double.NaN;
+    private double mLongitude = Double.NaN;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -69,14 +78,14 @@ public class AODSchedule extends SettingsPreferenceFragment implements
         mTillPref.setOnPreferenceClickListener(this);
 
         int mode = Settings.Secure.getIntForUser(resolver,
-                MODE_KEY, MODE_DISABLED, UserHandle.USER_CURRENT);
+                MODE_KEY, AODScheduleEngine.MODE_DISABLED, UserHandle.USER_CURRENT);
         mModePref = (SecureSettingListPreference) findPreference(MODE_KEY);
         mModePref.setValue(String.valueOf(mode));
         mModePref.setSummary(mModePref.getEntry());
         mModePref.setOnPreferenceChangeListener(this);
 
-        updateTimeEnablement(mode);
-        updateTimeSummary(mode);
+        loadLocation();
+        updateEngine(mode, getCustomTimeSetting());
     }
 
     @Override
@@ -86,94 +95,117 @@ public class AODSchedule extends SettingsPreferenceFragment implements
         mModePref.setSummary(mModePref.getEntries()[index]);
         Settings.Secure.putIntForUser(getActivity().getContentResolver(),
                 MODE_KEY, value, UserHandle.USER_CURRENT);
-        updateTimeEnablement(value);
-        updateTimeSummary(value);
+        updateEngine(value, getCustomTimeSetting());
         return true;
     }
 
     @Override
     public boolean onPreferenceClick(Preference preference) {
-        String[] times = getCustomTimeSetting();
         boolean isSince = preference == mSincePref;
-        int hour, minute;
+        LocalTime time = isSince ? mEngine.getSince() : mEngine.getTill();
         TimePickerDialog.OnTimeSetListener listener = (view, hourOfDay, minute1) -> {
             updateTimeSetting(isSince, hourOfDay, minute1);
         };
-        if (isSince) {
-            String[] sinceValues = times[0].split(":", 0);
-            hour = Integer.parseInt(sinceValues[0]);
-            minute = Integer.parseInt(sinceValues[1]);
-        } else {
-            String[] tillValues = times[1].split(":", 0);
-            hour = Integer.parseInt(tillValues[0]);
-            minute = Integer.parseInt(tillValues[1]);
-        }
         TimePickerDialog dialog = new TimePickerDialog(getContext(), listener,
-                hour, minute, DateFormat.is24HourFormat(getContext()));
+                time.getHour(), time.getMinute(), DateFormat.is24HourFormat(getContext()));
         dialog.show();
         return true;
     }
 
-    private String[] getCustomTimeSetting() {
-        String value = Settings.Secure.getStringForUser(getActivity().getContentResolver(),
+    private String getCustomTimeSetting() {
+        return Settings.Secure.getStringForUser(getActivity().getContentResolver(),
                 Settings.Secure.DOZE_ALWAYS_ON_AUTO_TIME, UserHandle.USER_CURRENT);
-        if (value == null || value.equals("")) value = "20:00,07:00";
-        return value.split(",", 0);
     }
 
-    private void updateTimeEnablement(int mode) {
-        mSincePref.setEnabled(mode == MODE_TIME || mode == MODE_MIXED_SUNRISE);
-        mTillPref.setEnabled(mode == MODE_TIME || mode == MODE_MIXED_SUNSET);
+    private void updateEngine(int mode, String times) {
+        mEngine = new AODScheduleEngine(mode, times, mLatitude, mLongitude);
+        updateTimeEnablement(mode);
+        updateTimeSummary();
     }
 
-    private void updateTimeSummary(int mode) {
-        updateTimeSummary(getCustomTimeSetting(), mode);
+    private void updateTimeEnablement(int mode) {
+        mSincePref.setEnabled(mode == AODScheduleEngine.MODE_TIME
+                || mode == AODScheduleEngine.MODE_MIXED_SUNRISE);
+        mTillPref.setEnabled(mode == AODScheduleEngine.MODE_TIME
+                || mode == AODScheduleEngine.MODE_MIXED_SUNSET);
     }
 
-    private void updateTimeSummary(String[] times, int mode) {
-        if (mode == MODE_DISABLED) {
+    private void updateTimeSummary() {
+        if (mEngine.getMode() == AODScheduleEngine.MODE_DISABLED) {
             mSincePref.setSummary("-");
             mTillPref.setSummary("-");
             return;
         }
 
-        if (mode == MODE_NIGHT) {
-            mSincePref.setSummary(R.string.always_on_display_schedule_sunset);
-            mTillPref.setSummary(R.string.always_on_display_schedule_sunrise);
-            return;
-        }
-
         String outputFormat = DateFormat.is24HourFormat(getContext()) ? "HH:mm" : "hh:mm a";
         DateTimeFormatter outputFormatter = DateTimeFormatter.ofPattern(outputFormat);
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        LocalTime sinceDT = LocalTime.parse(times[0], formatter);
-        LocalTime tillDT = LocalTime.parse(times[1], formatter);
-
-        if (mode == MODE_MIXED_SUNSET) {
-            mSincePref.setSummary(R.string.always_on_display_schedule_sunset);
-            mTillPref.setSummary(tillDT.format(outputFormatter));
-        } else if (mode == MODE_MIXED_SUNRISE) {
-            mTillPref.setSummary(R.string.always_on_display_schedule_sunrise);
-            mSincePref.setSummary(sinceDT.format(outputFormatter));
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now(zone);
+
+        if (mEngine.usesSunset()) {
+            mSincePref.setSummary(getSolarSummary(R.string.always_on_display_schedule_sunset,
+                    mEngine.getSunset(today, zone), outputFormatter));
         } else {
-            mSincePref.setSummary(sinceDT.format(outputFormatter));
-            mTillPref.setSummary(tillDT.format(outputFormatter));
+            mSincePref.setSummary(mEngine.getSince().format(outputFormatter));
         }
+        if (mEngine.usesSunrise()) {
+            // The schedule ends on the sunrise after tonight
+            mTillPref.setSummary(getSolarSummary(R.string.always_on_display_schedule_sunrise,
+                    mEngine.getSunrise(today.plusDays(1), zone), outputFormatter));
+        } else {
+            mTillPref.setSummary(mEngine.getTill().format(outputFormatter));
+        }
+    }
+
+    private String getSolarSummary(int labelRes, LocalTime time, DateTimeFormatter formatter) {
+        if (!mEngine.hasLocation()) {
+            // Without a location the time is only the fallback guess
+            return getString(labelRes);
+        }
+        return getString(R.string.always_on_display_schedule_solar_time,
+                getString(labelRes), time.format(formatter));
     }
 
     private void updateTimeSetting(boolean since, int hour, int minute) {
-        String[] times = getCustomTimeSetting();
-        String nHour = "";
-        String nMinute = "";
-        if (hour < 10) nHour += "0";
-        if (minute < 10) nMinute += "0";
-        nHour += String.valueOf(hour);
-        nMinute += String.valueOf(minute);
-        times[since ? 0 : 1] = nHour + ":" + nMinute;
+        String times = mEngine.withTime(since, LocalTime.of(hour, minute));
         Settings.Secure.putStringForUser(getActivity().getContentResolver(),
-                Settings.Secure.DOZE_ALWAYS_ON_AUTO_TIME,
-                times[0] + "," + times[1], UserHandle.USER_CURRENT);
-        updateTimeSummary(times, Integer.parseInt(mModePref.getValue()));
+                Settings.Secure.DOZE_ALWAYS_ON_AUTO_TIME, times, UserHandle.USER_CURRENT);
+        updateEngine(mEngine.getMode(), times);
+    }
+
+    private void loadLocation() {
+        Context context = getContext();
+        SharedPreferences prefs = context.getSharedPreferences(LOCATION_PREFS_NAME,
+                Context.MODE_PRIVATE);
+        Location location = getLastKnownLocation(context);
+        if (location != null) {
+            mLatitude = Math.round(location.getLatitude() * LOCATION_PRECISION)
+                    / LOCATION_PRECISION;
+            mLongitude = Math.round(location.getLongitude() * LOCATION_PRECISION)
+                    / LOCATION_PRECISION;
+            prefs.edit()
+                    .putFloat(LOCATION_LATITUDE, (float) mLatitude)
+                    .putFloat(LOCATION_LONGITUDE, (float) mLongitude)
+                    .apply();
+        } else if (prefs.contains(LOCATION_LATITUDE)) {
+            mLatitude = prefs.getFloat(LOCATION_LATITUDE, 0f);
+            mLongitude = prefs.getFloat(LOCATION_LONGITUDE, 0f);
+        }
+    }
+
+    private static Location getLastKnownLocation(Context context) {
+        LocationManager lm = context.getSystemService(LocationManager.class);
+        if (lm == null) return null;
+        try {
+            Location location = lm.getLastKnownLocation(LocationManager.FUSED_PROVIDER);
+            if (location == null) {
+                location = lm.getLastKnownLocation(LocationManager.PASSIVE_PROVIDER);
+            }
+            return location;
+        } catch (SecurityException | IllegalArgumentException e) {
+            // Location is off or not granted, fall back to the cached one
+            return null;
+        }
     }
 
     @Override
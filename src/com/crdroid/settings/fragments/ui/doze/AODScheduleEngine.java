@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Always on display schedule: parses DOZE_ALWAYS_ON_AUTO_TIME once, resolves sunset
+ * and sunrise for a location and lists the instants at which the display turns on or
+ * off, so callers can show concrete times or set exact alarms. Plain Java, no Android
+ * dependencies.
+ *
+ * Each local day opens one window at its start time, which closes at the first end time
+ * after it, so windows may run overnight. Overlapping windows merge.
+ */
+final class AODScheduleEngine {
+
+    static final int MODE_DISABLED = 0;
+    static final int MODE_NIGHT = 1;
+    static final int MODE_TIME = 2;
+    static final int MODE_MIXED_SUNSET = 3;
+    static final int MODE_MIXED_SUNRISE = 4;
+
+    static final String DEFAULT_TIMES = "20:00,07:00";
+
+    // Used for sunset and sunrise when the location is unknown or the sun does not
+    // rise or set that day
+    private static final LocalTime FALLBACK_SUNSET = LocalTime.of(19, 0);
+    private static final LocalTime FALLBACK_SUNRISE = LocalTime.of(7, 0);
+
+    // Safety bound for the transition search, a schedule whose windows always overlap
+    // never changes
+    private static final int MAX_SEARCH_DAYS = 400;
+
+    static final class Transition {
+        final Instant instant;
+        // Whether the display turns on rather than off
+        final boolean on;
+
+        Transition(Instant instant, boolean on) {
+            this.instant = instant;
+            this.on = on;
+        }
+    }
+
+    private final int mMode;
+    private final LocalTime mSince;
+    private final LocalTime mTill;
+    private final boolean mHasLocation;
+    private final double mLatitude;
+    private final double mLongitude;
+
+    /**
+     * @param times value of DOZE_ALWAYS_ON_AUTO_TIME, "HH:mm,HH:mm"; null or malformed
+     *              values fall back to {@link #DEFAULT_TIMES}
+     * @param latitude NaN if the location is unknown
+     */
+    AODScheduleEngine(int mode, String times, double latitude, double longitude) {
+        mMode = mode;
+        LocalTime[] parsed = parseTimes(times);
+        if (parsed == null) {
+            parsed = parseTimes(DEFAULT_TIMES);
+        }
+        mSince = parsed[0];
+        mTill = parsed[1];
+        mHasLocation = !Double.isNaN(latitude) && !Double.isNaN(longitude);
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    int getMode() {
+        return mMode;
+    }
+
+    LocalTime getSince() {
+        return mSince;
+    }
+
+    LocalTime getTill() {
+        return mTill;
+    }
+
+    boolean hasLocation() {
+        return mHasLocation;
+    }
+
+    boolean usesSunset() {
+        return mMode == MODE_NIGHT || mMode == MODE_MIXED_SUNSET;
+    }
+
+    boolean usesSunrise() {
+        return mMode == MODE_NIGHT || mMode == MODE_MIXED_SUNRISE;
+    }
+
+    /**
+     * Returns a copy of the setting value with one of the custom times replaced.
+     */
+    String withTime(boolean since, LocalTime time) {
+        final StringBuilder builder = new StringBuilder(11);
+        appendTime(builder, since ? time : mSince);
+        builder.append(',');
+        appendTime(builder, since ? mTill : time);
+        return builder.toString();
+    }
+
+    LocalTime getSunset(LocalDate date, ZoneId zone) {
+        return resolve(date, zone, false).atZone(zone).toLocalTime();
+    }
+
+    LocalTime getSunrise(LocalDate date, ZoneId zone) {
+        return resolve(date, zone, true).atZone(zone).toLocalTime();
+    }
+
+    /**
+     * Returns the next {@code count} on and off transitions strictly after {@code from},
+     * in order. Empty when the schedule is disabled or never changes.
+     */
+    List<Transition> nextTransitions(Instant from, ZoneId zone, int count) {
+        final List<Transition> result = new ArrayList<>(Math.max(count, 0));
+        if (mMode == MODE_DISABLED || count <= 0) {
+            return result;
+        }
+        // A window opened on an earlier day may still be open
+        LocalDate date = from.atZone(zone).toLocalDate().minusDays(2);
+        Instant start = getWindowStart(date, zone);
+        Instant end = getWindowEnd(start, zone);
+        for (int day = 0; day < MAX_SEARCH_DAYS && result.size() < count; day++) {
+            date = date.plusDays(1);
+            final Instant nextStart = getWindowStart(date, zone);
+            final Instant nextEnd = getWindowEnd(nextStart, zone);
+            if (!nextStart.isAfter(end)) {
+                // Overlapping windows merge instead of toggling the display
+                if (nextEnd.isAfter(end)) {
+                    end = nextEnd;
+                }
+                continue;
+            }
+            if (start.isAfter(from)) {
+                result.add(new Transition(start, true));
+            }
+            if (end.isAfter(from) && result.size() < count) {
+                result.add(new Transition(end, false));
+            }
+            start = nextStart;
+            end = nextEnd;
+        }
+        return result;
+    }
+
+    /**
+     * Whether the display is scheduled to be on at the given instant.
+     */
+    boolean isActive(Instant at, ZoneId zone) {
+        if (mMode == MODE_DISABLED) {
+            return false;
+        }
+        final LocalDate today = at.atZone(zone).toLocalDate();
+        for (LocalDate date = today.minusDays(2); !date.isAfter(today);
+                date = date.plusDays(1)) {
+            final Instant start = getWindowStart(date, zone);
+            if (!start.isAfter(at) && getWindowEnd(start, zone).isAfter(at)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Instant getWindowStart(LocalDate date, ZoneId zone) {
+        if (usesSunset()) {
+            return resolve(date, zone, false);
+        }
+        return ZonedDateTime.of(date, mSince, zone).toInstant();
+    }
+
+    /**
+     * Returns the first end time after the start, searched from the local day the
+     * window opens on. Sunset can fall past midnight and polar fallbacks are local
+     * times, so the end is not always on the next day.
+     */
+    private Instant getWindowEnd(Instant start, ZoneId zone) {
+        LocalDate date = start.atZone(zone).toLocalDate();
+        Instant end = getEndCandidate(date, zone);
+        while (!end.isAfter(start)) {
+            date = date.plusDays(1);
+            end = getEndCandidate(date, zone);
+        }
+        return end;
+    }
+
+    private Instant getEndCandidate(LocalDate date, ZoneId zone) {
+        if (usesSunrise()) {
+            return resolve(date, zone, true);
+        }
+        return ZonedDateTime.of(date, mTill, zone).toInstant();
+    }
+
+    private Instant resolve(LocalDate date, ZoneId zone, boolean sunrise) {
+        if (mHasLocation) {
+            final Instant instant = sunrise
+                    ? SolarCalculator.sunrise(date, mLatitude, mLongitude)
+                    : SolarCalculator.sunset(date, mLatitude, mLongitude);
+            if (instant != null) {
+                return instant;
+            }
+        }
+        return ZonedDateTime.of(date, sunrise ? FALLBACK_SUNRISE : FALLBACK_SUNSET, zone)
+                .toInstant();
+    }
+
+    private static LocalTime[] parseTimes(String value) {
+        if (value == null || value.length() != 11 || value.charAt(5) != ',') {
+            return null;
+        }
+        final LocalTime since = parseTime(value, 0);
+        final LocalTime till = parseTime(value, 6);
+        return since != null && till != null ? new LocalTime[] { since, till } : null;
+    }
+
+    private static LocalTime parseTime(String value, int offset) {
+        if (value.charAt(offset + 2) != ':') {
+            return null;
+        }
+        final int hour = parseDigits(value, offset);
+        final int minute = parseDigits(value, offset + 3);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return null;
+        }
+        return LocalTime.of(hour, minute);
+    }
+
+    private static int parseDigits(String value, int offset) {
+        final int high = value.charAt(offset) - '0';
+        final int low = value.charAt(offset + 1) - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -1;
+        }
+        return high * 10 + low;
+    }
+
+    private static void appendTime(StringBuilder builder, LocalTime time) {
+        if (time.getHour() < 10) builder.append('0');
+        builder.append(time.getHour()).append(':');
+        if (time.getMinute() < 10) builder.append('0');
+        builder.append(time.getMinute());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.provider.Settings;
+
+/**
+ * Immutable snapshot of the doze gesture settings read by the sensor callbacks.
+ *
+ * DozeService swaps in a new snapshot whenever one of the observed settings changes,
+ * so sensor events never have to go through the settings provider.
+ */
+final class DozeConfig {
+
+    static final Uri[] OBSERVED_URIS = {
+        Settings.Secure.getUriFor(Settings.Secure.DOZE_TILT_GESTURE),
+        Settings.Secure.getUriFor(Settings.Secure.DOZE_PICK_UP_GESTURE),
+        Settings.Secure.getUriFor(Settings.Secure.DOZE_HANDWAVE_GESTURE),
+        Settings.Secure.getUriFor(Settings.Secure.DOZE_POCKET_GESTURE),
+        Settings.Secure.getUriFor(Settings.Secure.RAISE_TO_WAKE_GESTURE),
+        Settings.Secure.getUriFor(Settings.Secure.DOZE_GESTURE_VIBRATE),
+    };
+
+    final boolean tiltEnabled;
+    final boolean pickUpEnabled;
+    final boolean handwaveEnabled;
+    final boolean pocketEnabled;
+    final boolean raiseToWake;
+    // Haptic feedback duration in ms, 0 when disabled
+    final int vibrateMs;
+
+    private DozeConfig(boolean tiltEnabled, boolean pickUpEnabled, boolean handwaveEnabled,
+            boolean pocketEnabled, boolean raiseToWake, int vibrateMs) {
+        this.tiltEnabled = tiltEnabled;
+        this.pickUpEnabled = pickUpEnabled;
+        this.handwaveEnabled = handwaveEnabled;
+        this.pocketEnabled = pocketEnabled;
+        this.raiseToWake = raiseToWake;
+        this.vibrateMs = vibrateMs;
+    }
+
+    static DozeConfig load(Context context) {
+        return new DozeConfig(
+                Utils.tiltEnabled(context),
+                Utils.pickUpEnabled(context),
+                Utils.handwaveGestureEnabled(context),
+                Utils.pocketGestureEnabled(context),
+                Utils.isRaiseToWakeEnabled(context),
+                Settings.Secure.getIntForUser(context.getContentResolver(),
+                        Settings.Secure.DOZE_GESTURE_VIBRATE, 0, UserHandle.USER_CURRENT));
+    }
+
+    boolean proximityEnabled() {
+        return handwaveEnabled || pocketEnabled;
+    }
+}
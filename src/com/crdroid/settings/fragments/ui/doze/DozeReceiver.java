@@ -19,8 +19,12 @@ package com.crdroid.settings.fragments.ui.doze;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import com.crdroid.settings.utils.DeviceCapabilities;
+
 public class DozeReceiver extends BroadcastReceiver {
 
     private static final boolean DEBUG = false;
@@ -30,7 +34,21 @@ public class DozeReceiver extends BroadcastReceiver {
     public void onReceive(final Context context, Intent intent) {
         if (intent.getAction().equals(Intent.ACTION_BOOT_COMPLETED)) {
             if (DEBUG) Log.d(TAG, "Starting service");
-            Utils.enableService(context);
+            // The first DeviceCapabilities probe after an update is slow, keep it off
+            // the main thread so the settings screens later find the snapshot ready
+            final PendingResult result = goAsync();
+            new Thread(() -> {
+                try {
+                    DeviceCapabilities.get(context);
+                } finally {
+                    // Even if probing threw, the service has to start and the broadcast
+                    // has to finish
+                    new Handler(Looper.getMainLooper()).post(() -> {
+                        Utils.enableService(context);
+                        result.finish();
+                    });
+                }
+            }, TAG).start();
         }
     }
 }
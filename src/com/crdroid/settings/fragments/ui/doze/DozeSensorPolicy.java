@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+/**
+ * Decides which doze sensors should be listening, from the screen, device idle,
+ * pocket and charging state. Plain Java state machine without Android dependencies.
+ *
+ * Nothing listens while the screen is on. With the screen off each enabled gesture
+ * listens, except that tilt and pickup pause while the proximity sensor is covered for
+ * long enough to be in a pocket, and the accelerometer pickup fallback also pauses in
+ * deep idle on battery. Leaving deep idle takes motion, so it resumes in time for the
+ * next pickup.
+ */
+final class DozeSensorPolicy {
+
+    static final int SENSOR_TILT = 1 << 0;
+    static final int SENSOR_PICKUP = 1 << 1;
+    static final int SENSOR_PROXIMITY = 1 << 2;
+
+    private final int mAvailable;
+    private final boolean mPickupIsAccelerometer;
+
+    private int mConfigured;
+    private boolean mScreenOn;
+    private boolean mDeviceIdle;
+    private boolean mPocketed;
+    private boolean mCharging;
+
+    /**
+     * @param available SENSOR_* flags of the sensors the device has
+     * @param pickupIsAccelerometer whether pickup runs on the raw accelerometer
+     */
+    DozeSensorPolicy(int available, boolean pickupIsAccelerometer, boolean screenOn) {
+        mAvailable = available;
+        mPickupIsAccelerometer = pickupIsAccelerometer;
+        mScreenOn = screenOn;
+    }
+
+    /**
+     * @param configured SENSOR_* flags of the gestures the user enabled
+     */
+    void setConfigured(int configured) {
+        mConfigured = configured;
+    }
+
+    void setScreenOn(boolean screenOn) {
+        mScreenOn = screenOn;
+        if (screenOn) {
+            // Proximity stops listening, so the last reading goes stale
+            mPocketed = false;
+        }
+    }
+
+    void setDeviceIdle(boolean deviceIdle) {
+        mDeviceIdle = deviceIdle;
+    }
+
+    void setPocketed(boolean pocketed) {
+        mPocketed = pocketed;
+    }
+
+    void setCharging(boolean charging) {
+        mCharging = charging;
+    }
+
+    /**
+     * Returns the SENSOR_* flags of the sensors that should be listening now.
+     */
+    int getEnabledSensors() {
+        if (mScreenOn) {
+            return 0;
+        }
+        int enabled = mConfigured & mAvailable;
+        // Only the proximity sensor can tell that the device is pocketed
+        if ((enabled & SENSOR_PROXIMITY) != 0 && mPocketed) {
+            enabled &= ~(SENSOR_TILT | SENSOR_PICKUP);
+        }
+        if (mPickupIsAccelerometer && mDeviceIdle && !mCharging) {
+            enabled &= ~SENSOR_PICKUP;
+        }
+        return enabled;
+    }
+}
@@ -21,9 +21,24 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.UserHandle;
 import android.util.Log;
 
+import com.android.settings.R;
+import com.crdroid.settings.utils.DeviceCapabilities;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 public class DozeService extends Service {
     private static final String TAG = "crDroidDozeService";
     private static final boolean DEBUG = false;
@@ -36,13 +51,56 @@ public class DozeService extends Service {
     private boolean mPickupSensorAvailable;
     private boolean mProximitySensorAvailable;
 
+    // Shared by all sensors for (un)registration and event delivery
+    private HandlerThread mSensorThread;
+    private Handler mSensorHandler;
+    private PulseArbiter mPulseArbiter;
+    // Only set while sensor tracing is enabled, used on the sensor thread
+    private SensorTraceRecorder mTraceRecorder;
+
+    // Replaced as a whole on settings changes, read from the sensor callbacks
+    private volatile DozeConfig mConfig;
+
+    // Policy and sensor enablement are only touched on the main thread
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private DozeSensorPolicy mPolicy;
+    private int mEnabledSensors;
+    private long mPocketDelayMs;
+
+    private final ContentObserver mSettingsObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            mConfig = DozeConfig.load(DozeService.this);
+            updateSensors();
+        }
+    };
+
+    private final Runnable mPocketedRunnable = () -> {
+        mPolicy.setPocketed(true);
+        updateSensors();
+    };
+
     private BroadcastReceiver mScreenStateReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            if (intent.getAction().equals(Intent.ACTION_SCREEN_ON)) {
-                onDisplayOn();
-            } else if (intent.getAction().equals(Intent.ACTION_SCREEN_OFF)) {
-                onDisplayOff();
+            switch (intent.getAction()) {
+                case Intent.ACTION_SCREEN_ON:
+                    onDisplayOn();
+                    break;
+                case Intent.ACTION_SCREEN_OFF:
+                    onDisplayOff();
+                    break;
+                case PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED:
+                    mPolicy.setDeviceIdle(
+                            getSystemService(PowerManager.class).isDeviceIdleMode());
+                    updateSensors();
+                    break;
+                case Intent.ACTION_POWER_CONNECTED:
+                case Intent.ACTION_POWER_DISCONNECTED:
+                    mPolicy.setCharging(
+                            Intent.ACTION_POWER_CONNECTED.equals(intent.getAction()));
+                    updateSensors();
+                    break;
             }
         }
     };
@@ -51,19 +109,66 @@ public class DozeService extends Service {
     public void onCreate() {
         if (DEBUG) Log.d(TAG, "Creating service");
 
-        mTiltSensorAvailable = Utils.getTiltSensor(this);
-        mPickupSensorAvailable = Utils.getPickupSensor(this);
-        mProximitySensorAvailable = Utils.getProximitySensor(this);
+        final DeviceCapabilities caps = DeviceCapabilities.get(this);
+        mTiltSensorAvailable = caps.hasDozeTiltSensor();
+        mPickupSensorAvailable = caps.hasDozePickupSensor();
+        mProximitySensorAvailable = caps.hasDozeProximitySensor();
 
         if (!mTiltSensorAvailable && !mPickupSensorAvailable && !mProximitySensorAvailable) return;
 
-        if (mTiltSensorAvailable) mTiltSensor = new TiltSensor(this);
-        if (mPickupSensorAvailable) mPickupSensor = new PickupSensor(this);
-        if (mProximitySensorAvailable) mProximitySensor = new ProximitySensor(this);
+        mConfig = DozeConfig.load(this);
+        for (Uri uri : DozeConfig.OBSERVED_URIS) {
+            getContentResolver().registerContentObserver(uri, false, mSettingsObserver,
+                    UserHandle.USER_ALL);
+        }
+
+        mSensorThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_FOREGROUND);
+        mSensorThread.start();
+        mSensorHandler = new Handler(mSensorThread.getLooper());
+
+        mPulseArbiter = new PulseArbiter(this, this::getConfig);
+        if (mTiltSensorAvailable) {
+            mTiltSensor = new TiltSensor(this, mPulseArbiter, mSensorHandler);
+        }
+        if (mPickupSensorAvailable) {
+            mPickupSensor = new PickupSensor(this, mPulseArbiter, mSensorHandler);
+        }
+        if (mProximitySensorAvailable) {
+            mProximitySensor = new ProximitySensor(this, this::getConfig, mPulseArbiter,
+                    mSensorHandler);
+            mProximitySensor.setCoverListener(covered ->
+                    mHandler.post(() -> onCoveredChanged(covered)));
+        }
+        // Covered for as long as the pocket gesture needs counts as pocketed
+        mPocketDelayMs = getResources().getInteger(
+                R.integer.config_dozePulseProximity_PocketMinDeltaNs) / 1000000L;
+
+        int available = 0;
+        if (mTiltSensorAvailable) available |= DozeSensorPolicy.SENSOR_TILT;
+        if (mPickupSensorAvailable) available |= DozeSensorPolicy.SENSOR_PICKUP;
+        if (mProximitySensorAvailable) available |= DozeSensorPolicy.SENSOR_PROXIMITY;
+        final PowerManager pm = getSystemService(PowerManager.class);
+        mPolicy = new DozeSensorPolicy(available,
+                mPickupSensorAvailable && mPickupSensor.isAccelerometer(), pm.isInteractive());
+        mPolicy.setDeviceIdle(pm.isDeviceIdleMode());
+        mPolicy.setCharging(getSystemService(BatteryManager.class).isCharging());
+
+        if (SensorTraceRecorder.isEnabled()) {
+            mTraceRecorder = new SensorTraceRecorder(this);
+            if (mTiltSensorAvailable) mTiltSensor.setRecorder(mTraceRecorder);
+            if (mPickupSensorAvailable) mPickupSensor.setRecorder(mTraceRecorder);
+            if (mProximitySensorAvailable) mProximitySensor.setRecorder(mTraceRecorder);
+        }
 
         IntentFilter screenStateFilter = new IntentFilter(Intent.ACTION_SCREEN_ON);
         screenStateFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        screenStateFilter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        screenStateFilter.addAction(Intent.ACTION_POWER_CONNECTED);
+        screenStateFilter.addAction(Intent.ACTION_POWER_DISCONNECTED);
         registerReceiver(mScreenStateReceiver, screenStateFilter);
+
+        // The service may be restarted while the screen is already off
+        updateSensors();
     }
 
     @Override
@@ -80,6 +185,8 @@ public class DozeService extends Service {
         if (!mTiltSensorAvailable && !mPickupSensorAvailable && !mProximitySensorAvailable) return;
 
         this.unregisterReceiver(mScreenStateReceiver);
+        getContentResolver().unregisterContentObserver(mSettingsObserver);
+        mHandler.removeCallbacksAndMessages(null);
         if (mTiltSensorAvailable) {
             mTiltSensor.disable();
         }
@@ -89,6 +196,12 @@ public class DozeService extends Service {
         if (mProximitySensorAvailable) {
             mProximitySensor.disable();
         }
+        mEnabledSensors = 0;
+        if (mTraceRecorder != null) {
+            mSensorHandler.post(mTraceRecorder::stop);
+        }
+        // Lets the queued unregistrations run before the looper stops
+        mSensorThread.quitSafely();
     }
 
     @Override
@@ -96,31 +209,82 @@ public class DozeService extends Service {
         return null;
     }
 
-    private void onDisplayOn() {
-        if (DEBUG) Log.d(TAG, "Display on");
-        if (mTiltSensorAvailable && Utils.tiltEnabled(this)) {
-            mTiltSensor.disable();
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        if (mPulseArbiter != null) {
+            mPulseArbiter.dump(pw);
         }
-        if (mPickupSensorAvailable && Utils.pickUpEnabled(this)) {
-            mPickupSensor.disable();
+        if (mPickupSensor != null) {
+            mPickupSensor.dump(pw);
         }
-        if (mProximitySensorAvailable && (Utils.handwaveGestureEnabled(this) ||
-                Utils.pocketGestureEnabled(this))) {
-            mProximitySensor.disable();
+    }
+
+    DozeConfig getConfig() {
+        return mConfig;
+    }
+
+    private void onDisplayOn() {
+        if (DEBUG) Log.d(TAG, "Display on");
+        if (mTraceRecorder != null) {
+            mSensorHandler.post(mTraceRecorder::markScreenOn);
         }
+        mHandler.removeCallbacks(mPocketedRunnable);
+        mPolicy.setScreenOn(true);
+        updateSensors();
     }
 
     private void onDisplayOff() {
         if (DEBUG) Log.d(TAG, "Display off");
-        if (mTiltSensorAvailable && Utils.tiltEnabled(this)) {
-            mTiltSensor.enable();
+        if (mTraceRecorder != null) {
+            mSensorHandler.post(mTraceRecorder::start);
+        }
+        mPolicy.setScreenOn(false);
+        updateSensors();
+    }
+
+    private void onCoveredChanged(boolean covered) {
+        mHandler.removeCallbacks(mPocketedRunnable);
+        if (covered) {
+            mHandler.postDelayed(mPocketedRunnable, mPocketDelayMs);
+        } else {
+            mPolicy.setPocketed(false);
+            updateSensors();
+        }
+    }
+
+    private void updateSensors() {
+        final DozeConfig config = mConfig;
+        int configured = 0;
+        if (config.tiltEnabled) configured |= DozeSensorPolicy.SENSOR_TILT;
+        if (config.pickUpEnabled) configured |= DozeSensorPolicy.SENSOR_PICKUP;
+        if (config.proximityEnabled()) configured |= DozeSensorPolicy.SENSOR_PROXIMITY;
+        mPolicy.setConfigured(configured);
+
+        final int enabled = mPolicy.getEnabledSensors();
+        final int changed = enabled ^ mEnabledSensors;
+        mEnabledSensors = enabled;
+        if (DEBUG && changed != 0) Log.d(TAG, "Enabled sensors: " + enabled);
+
+        if ((changed & DozeSensorPolicy.SENSOR_TILT) != 0) {
+            if ((enabled & DozeSensorPolicy.SENSOR_TILT) != 0) {
+                mTiltSensor.enable();
+            } else {
+                mTiltSensor.disable();
+            }
         }
-        if (mPickupSensorAvailable && Utils.pickUpEnabled(this)) {
-            mPickupSensor.enable();
+        if ((changed & DozeSensorPolicy.SENSOR_PICKUP) != 0) {
+            if ((enabled & DozeSensorPolicy.SENSOR_PICKUP) != 0) {
+                mPickupSensor.enable();
+            } else {
+                mPickupSensor.disable();
+            }
         }
-        if (mProximitySensorAvailable && (Utils.handwaveGestureEnabled(this) ||
-                Utils.pocketGestureEnabled(this))) {
-            mProximitySensor.enable();
+        if ((changed & DozeSensorPolicy.SENSOR_PROXIMITY) != 0) {
+            if ((enabled & DozeSensorPolicy.SENSOR_PROXIMITY) != 0) {
+                mProximitySensor.enable();
+            } else {
+                mProximitySensor.disable();
+            }
         }
     }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+/**
+ * Pickup gesture detection on raw accelerometer samples.
+ *
+ * A low-pass filter splits every sample into gravity and linear motion. The motion
+ * magnitude over the last {@link #GESTURE_WINDOW_NS} is kept in a ring buffer, and its mean
+ * has to rise above {@link #MOTION_ENTER} to start a gesture and fall below
+ * {@link #MOTION_EXIT} to end it. A gesture triggers once when gravity has turned by
+ * more than {@link #TILT_DEGREES} from the orientation the device rested in, which
+ * rejects table knocks and vibration. Violent motion such as shaking or walking with
+ * the device in a bag is ignored, and so is a filtered gravity that got longer than
+ * at rest, since linear motion leaked into it.
+ *
+ * Plain Java without Android dependencies and without allocation per sample, so it
+ * can be driven by recorded sensor traces off-device. Samples of a batch have to be
+ * fed in timestamp order, the filters use the timestamps rather than arrival time.
+ */
+final class PickupDetector {
+
+    // Span of motion averaged to decide whether the device is moving
+    static final long GESTURE_WINDOW_NS = 320_000_000L;
+    private static final int MIN_WINDOW = 2;
+    private static final int MAX_WINDOW = 16;
+
+    // Mean linear acceleration in m/s^2 starting and ending a gesture
+    static final float MOTION_ENTER = 0.6f;
+    static final float MOTION_EXIT = 0.25f;
+    // Above this the device is being shaken rather than picked up
+    static final float MOTION_MAX = 6f;
+    static final float TILT_DEGREES = 30f;
+
+    // Time constant of the gravity filter
+    private static final float GRAVITY_TAU_NS = 200_000_000f;
+    private static final float MIN_GRAVITY = 1f;
+    // Filtering gravity while it turns only shortens it, so a filtered gravity this
+    // much longer than at rest has linear motion in it, as at the onset of a shake
+    private static final float MAX_GRAVITY_STRETCH = 1.08f;
+
+    private static final float COS_TILT = (float) Math.cos(Math.toRadians(TILT_DEGREES));
+
+    private final long mMinTriggerIntervalNs;
+
+    private final float[] mMotion;
+    private int mMotionIndex;
+    private int mMotionCount;
+    private float mMotionSum;
+
+    private float mGravityX;
+    private float mGravityY;
+    private float mGravityZ;
+    private float mRestX;
+    private float mRestY;
+    private float mRestZ;
+
+    private long mLastTimestamp;
+    private long mLastTrigger;
+    private long mGestureStart;
+    private boolean mHasGravity;
+    private boolean mMoving;
+    private boolean mTriggered;
+
+    /**
+     * @param samplePeriodNs nominal sensor sampling period, sizes the motion window
+     */
+    PickupDetector(long minTriggerIntervalNs, long samplePeriodNs) {
+        mMinTriggerIntervalNs = minTriggerIntervalNs;
+        mMotion = new float[(int) Math.max(MIN_WINDOW,
+                Math.min(MAX_WINDOW, GESTURE_WINDOW_NS / samplePeriodNs))];
+        reset();
+    }
+
+    /**
+     * Forgets all state, e.g. after the sensor has been off and samples are not
+     * continuous anymore.
+     */
+    void reset() {
+        for (int i = 0; i < mMotion.length; i++) {
+            mMotion[i] = 0f;
+        }
+        mMotionIndex = 0;
+        mMotionCount = 0;
+        mMotionSum = 0f;
+        mHasGravity = false;
+        mMoving = false;
+        mTriggered = false;
+        mLastTrigger = Long.MIN_VALUE;
+    }
+
+    /**
+     * Feeds one sample in timestamp order and returns true if it completes a pickup.
+     */
+    boolean onSample(long timestampNs, float x, float y, float z) {
+        if (!mHasGravity) {
+            mGravityX = mRestX = x;
+            mGravityY = mRestY = y;
+            mGravityZ = mRestZ = z;
+            mLastTimestamp = timestampNs;
+            mHasGravity = true;
+            return false;
+        }
+
+        final long dt = timestampNs - mLastTimestamp;
+        mLastTimestamp = timestampNs;
+        if (dt <= 0) {
+            return false;
+        }
+        final float alpha = dt / (GRAVITY_TAU_NS + dt);
+        mGravityX += alpha * (x - mGravityX);
+        mGravityY += alpha * (y - mGravityY);
+        mGravityZ += alpha * (z - mGravityZ);
+
+        final float lx = x - mGravityX;
+        final float ly = y - mGravityY;
+        final float lz = z - mGravityZ;
+        final float motion = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+
+        mMotionSum += motion - mMotion[mMotionIndex];
+        mMotion[mMotionIndex] = motion;
+        mMotionIndex = (mMotionIndex + 1) % mMotion.length;
+        if (mMotionCount < mMotion.length) {
+            mMotionCount++;
+        }
+        final float mean = mMotionSum / mMotionCount;
+
+        if (!mMoving) {
+            if (mean < MOTION_ENTER) {
+                // Still at rest, follow slow orientation drift
+                mRestX = mGravityX;
+                mRestY = mGravityY;
+                mRestZ = mGravityZ;
+                return false;
+            }
+            mMoving = true;
+            mTriggered = false;
+            mGestureStart = timestampNs;
+        } else if (mean < MOTION_EXIT) {
+            mMoving = false;
+            return false;
+        }
+
+        if (mTriggered || mean > MOTION_MAX || !isTilted()) {
+            return false;
+        }
+        if (mLastTrigger != Long.MIN_VALUE
+                && timestampNs - mLastTrigger < mMinTriggerIntervalNs) {
+            return false;
+        }
+        mTriggered = true;
+        mLastTrigger = timestampNs;
+        return true;
+    }
+
+    /**
+     * Timestamp of the sample that started the current or last gesture.
+     */
+    long getGestureStartNs() {
+        return mGestureStart;
+    }
+
+    private boolean isTilted() {
+        final float gravity = mGravityX * mGravityX + mGravityY * mGravityY
+                + mGravityZ * mGravityZ;
+        final float rest = mRestX * mRestX + mRestY * mRestY + mRestZ * mRestZ;
+        if (gravity < MIN_GRAVITY || rest < MIN_GRAVITY) {
+            return false;
+        }
+        if (gravity > rest * MAX_GRAVITY_STRETCH * MAX_GRAVITY_STRETCH) {
+            return false;
+        }
+        final float dot = mGravityX * mRestX + mGravityY * mRestY + mGravityZ * mRestZ;
+        return dot < COS_TILT * (float) Math.sqrt(gravity * rest);
+    }
+}
@@ -22,48 +22,58 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.os.PowerManager;
-import android.os.PowerManager.WakeLock;
+import android.os.Handler;
 import android.os.SystemClock;
-import android.os.UserHandle;
-import android.os.VibrationEffect;
-import android.os.Vibrator;
-import android.provider.Settings;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
 import com.android.settings.R;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.io.PrintWriter;
 
 public class PickupSensor implements SensorEventListener {
     private static final boolean DEBUG = false;
     private static final String TAG = "PickupSensor";
 
+    // Period SensorManager.SENSOR_DELAY_NORMAL stands for
+    private static final int NORMAL_SAMPLING_PERIOD_US = 200000;
+    // Accelerometer fallback sampling, batched in the sensor hub FIFO when possible
+    private static final int ACCEL_SAMPLING_PERIOD_US = 20000;
+    private static final int ACCEL_MAX_REPORT_LATENCY_US =
+            (int) (PickupDetector.GESTURE_WINDOW_NS / 1000);
+    private static final int ACCEL_WINDOW_SAMPLES =
+            ACCEL_MAX_REPORT_LATENCY_US / ACCEL_SAMPLING_PERIOD_US;
+    // Deliveries closer than this belong to the same batch flush
+    private static final long BATCH_GAP_MS = 10;
+
     private SensorManager mSensorManager;
     private Sensor mSensorPickup;
     private Context mContext;
+    private PulseArbiter mArbiter;
     private TelephonyManager telephonyManager;
-    private ExecutorService mExecutorService;
-    private PowerManager mPowerManager;
-    private WakeLock mWakeLock;
+    private Handler mHandler;
 
     private boolean mIsCustomPickupSensor;
     private int mMinPulseIntervalMs;
     private int mWakelockTimeoutMs;
 
-    private float[] mGravity;
-    private float mAccelLast;
-    private float mAccelCurrent;
+    private PickupDetector mDetector;
+    private SensorTraceRecorder mRecorder;
     private long mEntryTimestamp = 0;
+    private long mMinPulseIntervalNs;
     private float mSensorValue;
 
-    private Vibrator mVibrator;
+    private boolean mBatched;
+    private int mSamplingPeriodUs;
+    private int mWakeups;
+    private long mLastDelivery;
+    private long mEnabledSince;
+    private long mDisabledAt;
 
-    public PickupSensor(Context context) {
+    public PickupSensor(Context context, PulseArbiter arbiter, Handler handler) {
         mContext = context;
+        mArbiter = arbiter;
+        mHandler = handler;
         final Resources res = context.getResources();
         mSensorManager = mContext.getSystemService(SensorManager.class);
         mSensorValue = res.getFloat(R.dimen.pickup_sensor_value);
@@ -80,80 +90,75 @@ public class PickupSensor implements SensorEventListener {
         }
         if (mSensorPickup == null)
             mSensorPickup = mSensorManager.getDefaultSensor(Sensor.TYPE_PICK_UP_GESTURE);
-        if (mSensorPickup == null)
-            mSensorPickup = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        if (mSensorPickup == null) {
+            // A wake-up variant keeps delivering while suspended and wakes the AP
+            // once per full batch instead of dropping samples. Without a FIFO large
+            // enough for a gesture window it would wake the AP for every sample.
+            final Sensor wakeUp =
+                    mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER, true);
+            if (wakeUp != null && wakeUp.getFifoMaxEventCount() >= ACCEL_WINDOW_SAMPLES) {
+                mSensorPickup = wakeUp;
+            } else {
+                mSensorPickup = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            }
+        }
+        mSamplingPeriodUs = NORMAL_SAMPLING_PERIOD_US;
+        if (mSensorPickup != null && mSensorPickup.getType() == Sensor.TYPE_ACCELEROMETER) {
+            mBatched = mSensorPickup.getFifoMaxEventCount() >= ACCEL_WINDOW_SAMPLES;
+            // Without a FIFO every sample wakes the AP, so keep the old low rate
+            mSamplingPeriodUs = mBatched ? ACCEL_SAMPLING_PERIOD_US : NORMAL_SAMPLING_PERIOD_US;
+        }
         mMinPulseIntervalMs =
             res.getInteger(R.integer.config_dozePulsePickup_MinPulseIntervalMs);
         mWakelockTimeoutMs =
             res.getInteger(R.integer.config_dozePulsePickup_WakelockTimeoutMs);
+        mMinPulseIntervalNs = mMinPulseIntervalMs * 1000000L;
+        mDetector = new PickupDetector(mMinPulseIntervalNs, mSamplingPeriodUs * 1000L);
         if (DEBUG) {
             Log.d(TAG, "Pickup sensor: " + mSensorPickup.getStringType());
+            Log.d(TAG, "Batched: " + mBatched + ", wake-up: " + mSensorPickup.isWakeUpSensor());
             Log.d(TAG, "MinPulseIntervalMs: " + String.valueOf(mMinPulseIntervalMs));
             Log.d(TAG, "WakelockTimeoutMs: " + String.valueOf(mWakelockTimeoutMs));
         }
         telephonyManager = (TelephonyManager) mContext.getSystemService(Context.TELEPHONY_SERVICE);
-        mPowerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
-        mWakeLock = mPowerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
-        mExecutorService = Executors.newSingleThreadExecutor();
-        mAccelLast = SensorManager.GRAVITY_EARTH;
-        mAccelCurrent = SensorManager.GRAVITY_EARTH;
-        mVibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
-        if (mVibrator != null && !mVibrator.hasVibrator()) {
-            mVibrator = null;
-        }
-    }
-
-    private Future<?> submit(Runnable runnable) {
-        return mExecutorService.submit(runnable);
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
         if (DEBUG) Log.d(TAG, "Got sensor event: " + event.values[0]);
+        if (mRecorder != null) mRecorder.record(event);
+
+        final long now = SystemClock.elapsedRealtime();
+        if (now - mLastDelivery > BATCH_GAP_MS) {
+            mWakeups++;
+        }
+        mLastDelivery = now;
+
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            // The detector rate limits its own triggers, it needs every sample.
+            // Batched samples arrive back to back in timestamp order.
+            if (mDetector.onSample(event.timestamp,
+                    event.values[0], event.values[1], event.values[2])) {
+                launchWakeOrPulse();
+            }
+            return;
+        }
 
         long delta = event.timestamp - mEntryTimestamp;
-        if (delta < mMinPulseIntervalMs) {
+        if (delta < mMinPulseIntervalNs) {
             return;
         } else {
             mEntryTimestamp = event.timestamp;
         }
 
-        try {
-            if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER ||
-                    event.sensor.getType() == Sensor.TYPE_PICK_UP_GESTURE) {
-                mGravity = event.values.clone();
-
-                // Movement detection
-                float x = mGravity[0];
-                float y = mGravity[1];
-                float z = mGravity[2];
-
-                mAccelLast = mAccelCurrent;
-                mAccelCurrent = (float) Math.sqrt(x * x + y * y + z * z);
-                float accDelta = Math.abs(mAccelCurrent - mAccelLast);
-                if (accDelta >= 0.1 && accDelta <= 1.5) {
-                    launchWakeOrPulse();
-                }
-            } else {
-                if (event.values[0] == mSensorValue) {
-                    launchWakeOrPulse();
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (event.sensor.getType() == Sensor.TYPE_PICK_UP_GESTURE
+                || event.values[0] == mSensorValue) {
+            launchWakeOrPulse();
         }
     }
 
     private void launchWakeOrPulse() {
-        boolean isRaiseToWake = Utils.isRaiseToWakeEnabled(mContext);
-        if (isRaiseToWake) {
-            mWakeLock.acquire(mWakelockTimeoutMs);
-            mPowerManager.wakeUp(SystemClock.uptimeMillis(),
-                PowerManager.WAKE_REASON_GESTURE, TAG);
-        } else {
-            Utils.launchDozePulse(mContext);
-            doHapticFeedback();
-        }
+        mArbiter.onTrigger(PulseArbiter.SOURCE_PICKUP, mWakelockTimeoutMs);
     }
 
     @Override
@@ -161,31 +166,58 @@ public class PickupSensor implements SensorEventListener {
 
     }
 
+    boolean isAccelerometer() {
+        return mSensorPickup.getType() == Sensor.TYPE_ACCELEROMETER;
+    }
+
+    void setRecorder(SensorTraceRecorder recorder) {
+        mRecorder = recorder;
+    }
+
     protected void enable() {
         if (DEBUG) Log.d(TAG, "Enabling");
-        submit(() -> {
-            mSensorManager.registerListener(this, mSensorPickup,
-                    mIsCustomPickupSensor ? SensorManager.SENSOR_DELAY_NORMAL
-                    : SensorManager.SENSOR_STATUS_ACCURACY_HIGH);
+        mHandler.post(() -> {
+            // Events are delivered on this thread, so no sample can race the reset
+            mDetector.reset();
+            mWakeups = 0;
+            mLastDelivery = 0;
+            mEnabledSince = SystemClock.elapsedRealtime();
+            if (mBatched) {
+                mSensorManager.registerListener(this, mSensorPickup,
+                        mSamplingPeriodUs, ACCEL_MAX_REPORT_LATENCY_US, mHandler);
+            } else {
+                mSensorManager.registerListener(this, mSensorPickup,
+                        mIsCustomPickupSensor ? SensorManager.SENSOR_DELAY_NORMAL
+                        : mSamplingPeriodUs, mHandler);
+            }
         });
     }
 
     protected void disable() {
         if (DEBUG) Log.d(TAG, "Disabling");
-        submit(() -> {
+        mHandler.post(() -> {
+            mDisabledAt = SystemClock.elapsedRealtime();
+            if (DEBUG) Log.d(TAG, "Wakeups per minute: " + getWakeupsPerMinute());
             mSensorManager.unregisterListener(this, mSensorPickup);
         });
     }
 
-    private void doHapticFeedback() {
-        if (mVibrator == null) {
-            return;
-        }
-        int val = Settings.Secure.getIntForUser(mContext.getContentResolver(),
-                Settings.Secure.DOZE_GESTURE_VIBRATE, 0, UserHandle.USER_CURRENT);
-        if (val > 0) {
-            mVibrator.vibrate(VibrationEffect.createOneShot(val,
-                    VibrationEffect.DEFAULT_AMPLITUDE));
-        }
+    /**
+     * Rate of event deliveries over the last enabled period, counting each batch
+     * flush once.
+     */
+    float getWakeupsPerMinute() {
+        final long end = mDisabledAt > mEnabledSince
+                ? mDisabledAt : SystemClock.elapsedRealtime();
+        final long elapsed = end - mEnabledSince;
+        return elapsed > 0 ? mWakeups * 60000f / elapsed : 0f;
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("PickupSensor:");
+        pw.println("  sensor=" + mSensorPickup.getStringType()
+                + " wakeUp=" + mSensorPickup.isWakeUpSensor() + " batched=" + mBatched);
+        pw.println("  samplingPeriodUs=" + mSamplingPeriodUs);
+        pw.println("  wakeups=" + mWakeups + " wakeupsPerMinute=" + getWakeupsPerMinute());
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+/**
+ * Classifies proximity uncover events into hand waves and pocket removals by how long
+ * the sensor was covered. Plain Java, shared with the trace replay.
+ */
+final class ProximityGestureDetector {
+
+    static final int GESTURE_NONE = 0;
+    static final int GESTURE_HANDWAVE = 1 << 0;
+    static final int GESTURE_POCKET = 1 << 1;
+
+    private final long mHandwaveMaxDeltaNs;
+    private final long mPocketMinDeltaNs;
+
+    private boolean mSawNear;
+    private long mInPocketTime;
+
+    ProximityGestureDetector(long handwaveMaxDeltaNs, long pocketMinDeltaNs) {
+        mHandwaveMaxDeltaNs = handwaveMaxDeltaNs;
+        mPocketMinDeltaNs = pocketMinDeltaNs;
+    }
+
+    /**
+     * Returns the gestures the uncover event may stand for, GESTURE_NONE for other events.
+     */
+    int onSample(long timestampNs, boolean isNear) {
+        int gestures = GESTURE_NONE;
+        if (mSawNear && !isNear) {
+            final long delta = timestampNs - mInPocketTime;
+            if (delta < mHandwaveMaxDeltaNs) {
+                gestures |= GESTURE_HANDWAVE;
+            }
+            if (delta >= mPocketMinDeltaNs) {
+                gestures |= GESTURE_POCKET;
+            }
+        } else {
+            mInPocketTime = timestampNs;
+        }
+        mSawNear = isNear;
+        return gestures;
+    }
+}
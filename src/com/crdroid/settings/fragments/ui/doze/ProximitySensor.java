@@ -22,43 +22,46 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.os.PowerManager;
-import android.os.PowerManager.WakeLock;
-import android.os.SystemClock;
-import android.os.UserHandle;
-import android.os.VibrationEffect;
-import android.os.Vibrator;
-import android.provider.Settings;
+import android.os.Handler;
 import android.util.Log;
 
 import com.android.settings.R;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 public class ProximitySensor implements SensorEventListener {
 
     private static final boolean DEBUG = false;
     private static final String TAG = "ProximitySensor";
 
+    interface CoverListener {
+        /**
+         * Called on the sensor thread whenever the sensor gets covered or uncovered.
+         */
+        void onCoveredChanged(boolean covered);
+    }
+
     private SensorManager mSensorManager;
     private Sensor mSensor;
     private Context mContext;
-    private ExecutorService mExecutorService;
-    private PowerManager mPowerManager;
-    private WakeLock mWakeLock;
-
-    private boolean mSawNear = false;
-    private long mInPocketTime = 0;
+    private Supplier<DozeConfig> mConfig;
+    private PulseArbiter mArbiter;
+    private Handler mHandler;
+
+    private ProximityGestureDetector mDetector;
+    private SensorTraceRecorder mRecorder;
+    private CoverListener mCoverListener;
+    private boolean mCovered;
     private int mWakelockTimeoutMs;
     private int mHandWaveMaxDeltaNs;
     private int mPocketMinDeltaNs;
 
-    private Vibrator mVibrator;
-
-    public ProximitySensor(Context context) {
+    public ProximitySensor(Context context, Supplier<DozeConfig> config, PulseArbiter arbiter,
+            Handler handler) {
         mContext = context;
+        mConfig = config;
+        mArbiter = arbiter;
+        mHandler = handler;
         final Resources res = context.getResources();
         mSensorManager = mContext.getSystemService(SensorManager.class);
         final boolean wakeup =
@@ -70,56 +73,36 @@ public class ProximitySensor implements SensorEventListener {
             res.getInteger(R.integer.config_dozePulseProximity_HandwaveMaxDeltaNs);
         mPocketMinDeltaNs =
             res.getInteger(R.integer.config_dozePulseProximity_PocketMinDeltaNs);
+        mDetector = new ProximityGestureDetector(mHandWaveMaxDeltaNs, mPocketMinDeltaNs);
         if (DEBUG) {
             Log.d(TAG, "WakelockTimeoutMs: " + String.valueOf(mWakelockTimeoutMs));
             Log.d(TAG, "HandwaveMaxDeltaNs: " + String.valueOf(mHandWaveMaxDeltaNs));
             Log.d(TAG, "PocketMinDeltaNs: " + String.valueOf(mPocketMinDeltaNs));
         }
-        mPowerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
-        mWakeLock = mPowerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
-        mExecutorService = Executors.newSingleThreadExecutor();
-        mVibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
-        if (mVibrator != null && !mVibrator.hasVibrator()) {
-            mVibrator = null;
-        }
-    }
-
-    private Future<?> submit(Runnable runnable) {
-        return mExecutorService.submit(runnable);
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        boolean isRaiseToWake = Utils.isRaiseToWakeEnabled(mContext);
+        if (mRecorder != null) mRecorder.record(event);
         boolean isNear = event.values[0] < mSensor.getMaximumRange();
-        if (mSawNear && !isNear) {
-            if (shouldPulse(event.timestamp)) {
-                if (isRaiseToWake) {
-                    mWakeLock.acquire(mWakelockTimeoutMs);
-                    mPowerManager.wakeUp(SystemClock.uptimeMillis(),
-                        PowerManager.WAKE_REASON_GESTURE, TAG);
-                } else {
-                    Utils.launchDozePulse(mContext);
-                    doHapticFeedback();
-                }
-            }
-        } else {
-            mInPocketTime = event.timestamp;
+        if (isNear != mCovered) {
+            mCovered = isNear;
+            if (mCoverListener != null) mCoverListener.onCoveredChanged(isNear);
+        }
+        int gestures = mDetector.onSample(event.timestamp, isNear);
+        if (gestures == ProximityGestureDetector.GESTURE_NONE) {
+            return;
+        }
+        if (shouldPulse(mConfig.get(), gestures)) {
+            mArbiter.onTrigger(PulseArbiter.SOURCE_PROXIMITY, mWakelockTimeoutMs);
         }
-        mSawNear = isNear;
     }
 
-    private boolean shouldPulse(long timestamp) {
-        long delta = timestamp - mInPocketTime;
-        boolean shouldPulse = false;
-
-        if (delta < mHandWaveMaxDeltaNs)
-            shouldPulse = Utils.handwaveGestureEnabled(mContext);
-
-        if (!shouldPulse && delta >= mPocketMinDeltaNs)
-            shouldPulse = Utils.pocketGestureEnabled(mContext);
-
-        return shouldPulse;
+    static boolean shouldPulse(DozeConfig config, int gestures) {
+        return ((gestures & ProximityGestureDetector.GESTURE_HANDWAVE) != 0
+                && config.handwaveEnabled)
+                || ((gestures & ProximityGestureDetector.GESTURE_POCKET) != 0
+                && config.pocketEnabled);
     }
 
     @Override
@@ -127,30 +110,27 @@ public class ProximitySensor implements SensorEventListener {
         /* Empty */
     }
 
+    void setRecorder(SensorTraceRecorder recorder) {
+        mRecorder = recorder;
+    }
+
+    void setCoverListener(CoverListener listener) {
+        mCoverListener = listener;
+    }
+
     protected void enable() {
         if (DEBUG) Log.d(TAG, "Enabling");
-        submit(() -> {
+        mHandler.post(() -> {
             mSensorManager.registerListener(this, mSensor,
-                    SensorManager.SENSOR_DELAY_NORMAL);
+                    SensorManager.SENSOR_DELAY_NORMAL, mHandler);
         });
     }
 
     protected void disable() {
         if (DEBUG) Log.d(TAG, "Disabling");
-        submit(() -> {
+        mHandler.post(() -> {
             mSensorManager.unregisterListener(this, mSensor);
+            mCovered = false;
         });
     }
-
-    private void doHapticFeedback() {
-        if (mVibrator == null) {
-            return;
-        }
-        int val = Settings.Secure.getIntForUser(mContext.getContentResolver(),
-                Settings.Secure.DOZE_GESTURE_VIBRATE, 0, UserHandle.USER_CURRENT);
-        if (val > 0) {
-            mVibrator.vibrate(VibrationEffect.createOneShot(val,
-                    VibrationEffect.DEFAULT_AMPLITUDE));
-        }
-    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+
+import com.android.settings.R;
+
+import java.io.PrintWriter;
+import java.util.function.Supplier;
+
+/**
+ * Turns the triggers of all doze sensors into pulses or wake ups.
+ *
+ * Triggers arriving within the dedup window of the last accepted one are dropped, so
+ * a pickup seen by tilt, pickup and proximity at once only lights the screen once.
+ * All wake ups go through one wakelock, whose hold time is accounted together with
+ * per source trigger counts for dumpsys.
+ */
+final class PulseArbiter {
+
+    private static final boolean DEBUG = false;
+    private static final String TAG = "DozePulseArbiter";
+
+    static final int SOURCE_TILT = 0;
+    static final int SOURCE_PICKUP = 1;
+    static final int SOURCE_PROXIMITY = 2;
+    private static final String[] SOURCE_NAMES = { "tilt", "pickup", "proximity" };
+
+    private final Context mContext;
+    private final Supplier<DozeConfig> mConfig;
+    private final PowerManager mPowerManager;
+    private final WakeLock mWakeLock;
+    private final long mDedupWindowMs;
+    private Vibrator mVibrator;
+
+    private long mLastPulse = Long.MIN_VALUE;
+    private final int[] mTriggers = new int[SOURCE_NAMES.length];
+    private final int[] mPulses = new int[SOURCE_NAMES.length];
+    private long mWakeLockHeldUntil;
+    private long mWakeLockHoldMs;
+
+    PulseArbiter(Context context, Supplier<DozeConfig> config) {
+        mContext = context;
+        mConfig = config;
+        mDedupWindowMs = context.getResources().getInteger(
+                R.integer.config_dozePulse_DedupWindowMs);
+        mPowerManager = context.getSystemService(PowerManager.class);
+        mWakeLock = mPowerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+        mVibrator = context.getSystemService(Vibrator.class);
+        if (mVibrator != null && !mVibrator.hasVibrator()) {
+            mVibrator = null;
+        }
+    }
+
+    /**
+     * Pulses or wakes the device unless another trigger did so within the dedup window.
+     */
+    synchronized void onTrigger(int source, int wakelockTimeoutMs) {
+        final long now = SystemClock.elapsedRealtime();
+        mTriggers[source]++;
+        if (mLastPulse != Long.MIN_VALUE && now - mLastPulse < mDedupWindowMs) {
+            if (DEBUG) Log.d(TAG, "Dropping " + SOURCE_NAMES[source] + " trigger");
+            return;
+        }
+        mLastPulse = now;
+        mPulses[source]++;
+
+        final DozeConfig config = mConfig.get();
+        if (config.raiseToWake) {
+            acquireWakeLock(now, wakelockTimeoutMs);
+            mPowerManager.wakeUp(SystemClock.uptimeMillis(),
+                    PowerManager.WAKE_REASON_GESTURE, TAG);
+        } else {
+            Utils.launchDozePulse(mContext);
+            doHapticFeedback(config);
+        }
+    }
+
+    private void acquireWakeLock(long now, int timeoutMs) {
+        // Timed acquires release on their own, so the hold time is the union of
+        // the acquired intervals
+        final long until = now + timeoutMs;
+        if (until > mWakeLockHeldUntil) {
+            mWakeLockHoldMs += until - Math.max(now, mWakeLockHeldUntil);
+            mWakeLockHeldUntil = until;
+        }
+        mWakeLock.acquire(timeoutMs);
+    }
+
+    private void doHapticFeedback(DozeConfig config) {
+        if (mVibrator == null) {
+            return;
+        }
+        if (config.vibrateMs > 0) {
+            mVibrator.vibrate(VibrationEffect.createOneShot(config.vibrateMs,
+                    VibrationEffect.DEFAULT_AMPLITUDE));
+        }
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("PulseArbiter:");
+        pw.println("  dedupWindowMs=" + mDedupWindowMs);
+        for (int i = 0; i < SOURCE_NAMES.length; i++) {
+            pw.println("  " + SOURCE_NAMES[i] + ": triggers=" + mTriggers[i]
+                    + " pulses=" + mPulses[i]);
+        }
+        pw.println("  wakeLockHoldMs=" + mWakeLockHoldMs);
+    }
+}
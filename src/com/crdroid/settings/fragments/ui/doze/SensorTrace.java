@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Binary format of recorded doze sensor streams, shared by the on-device recorder and
+ * the off-device replay. Plain Java so it also builds on a desktop JVM.
+ *
+ * A trace starts with {@link #MAGIC} and {@link #VERSION}, followed by records of
+ * sensor type (int), timestamp in ns (long), value count (byte) and the values
+ * (floats). Negative types are markers written by the service rather than by a sensor.
+ */
+final class SensorTrace {
+
+    static final int MAGIC = 0x445a5452; // DZTR
+    static final int VERSION = 1;
+
+    // Mirrors of android.hardware.Sensor types, which are not available off-device
+    static final int TYPE_ACCELEROMETER = 1;
+    static final int TYPE_PROXIMITY = 8;
+    static final int TYPE_TILT_DETECTOR = 22;
+    static final int TYPE_PICK_UP_GESTURE = 25;
+
+    // Values: sensor type, maximum range. Written before the first event of a sensor.
+    static final int MARKER_SENSOR_INFO = -1;
+    // No values. The screen was turned on, by a pulse or by the user.
+    static final int MARKER_SCREEN_ON = -2;
+
+    static final int MAX_VALUES = 16;
+
+    private SensorTrace() {}
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void writeRecord(DataOutputStream out, int type, long timestampNs,
+            float[] values, int count) throws IOException {
+        count = Math.min(count, MAX_VALUES);
+        out.writeInt(type);
+        out.writeLong(timestampNs);
+        out.writeByte(count);
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(values[i]);
+        }
+    }
+
+    /**
+     * Streams the records of a trace, reusing one value buffer.
+     */
+    static final class Reader {
+        private final DataInputStream mIn;
+
+        int type;
+        long timestampNs;
+        int count;
+        final float[] values = new float[MAX_VALUES];
+
+        Reader(DataInputStream in) throws IOException {
+            mIn = in;
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a doze sensor trace");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+        }
+
+        /**
+         * Reads the next record into the public fields, returns false at the end.
+         */
+        boolean next() throws IOException {
+            try {
+                type = mIn.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            timestampNs = mIn.readLong();
+            count = mIn.readUnsignedByte();
+            if (count > MAX_VALUES) {
+                throw new IOException("Corrupt record with " + count + " values");
+            }
+            for (int i = 0; i < count; i++) {
+                values[i] = mIn.readFloat();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import android.content.Context;
+import android.hardware.SensorEvent;
+import android.os.SystemClock;
+import android.os.SystemProperties;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes the raw events of the doze sensors to {@code files/doze_traces}, one trace per
+ * screen off period, for tuning the gesture thresholds with tools/doze-replay.
+ *
+ * Off unless the {@link #PROPERTY} system property is set. Not thread safe, all calls
+ * have to come from the sensor thread.
+ */
+final class SensorTraceRecorder {
+
+    private static final String TAG = "SensorTraceRecorder";
+
+    static final String PROPERTY = "debug.crdroid.doze.trace";
+
+    private static final String TRACE_DIR = "doze_traces";
+    private static final int MAX_TRACES = 20;
+
+    private final File mDir;
+    private final SparseBooleanArray mSeenTypes = new SparseBooleanArray();
+    private final float[] mInfo = new float[2];
+    private DataOutputStream mOut;
+
+    static boolean isEnabled() {
+        return SystemProperties.getBoolean(PROPERTY, false);
+    }
+
+    SensorTraceRecorder(Context context) {
+        mDir = new File(context.getFilesDir(), TRACE_DIR);
+    }
+
+    void start() {
+        stop();
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Log.w(TAG, "Failed to create " + mDir);
+            return;
+        }
+        pruneTraces();
+        final File file = new File(mDir, "trace-" + System.currentTimeMillis() + ".bin");
+        try {
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            SensorTrace.writeHeader(mOut);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to start " + file, e);
+            stop();
+        }
+    }
+
+    void record(SensorEvent event) {
+        if (mOut == null) {
+            return;
+        }
+        final int type = event.sensor.getType();
+        try {
+            if (!mSeenTypes.get(type)) {
+                mSeenTypes.put(type, true);
+                mInfo[0] = type;
+                mInfo[1] = event.sensor.getMaximumRange();
+                SensorTrace.writeRecord(mOut, SensorTrace.MARKER_SENSOR_INFO,
+                        event.timestamp, mInfo, mInfo.length);
+            }
+            SensorTrace.writeRecord(mOut, type, event.timestamp,
+                    event.values, event.values.length);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to record event", e);
+            stop();
+        }
+    }
+
+    /**
+     * Marks the end of the screen off period and closes the trace.
+     */
+    void markScreenOn() {
+        if (mOut == null) {
+            return;
+        }
+        try {
+            // Same time base as SensorEvent.timestamp
+            SensorTrace.writeRecord(mOut, SensorTrace.MARKER_SCREEN_ON,
+                    SystemClock.elapsedRealtimeNanos(), mInfo, 0);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to record screen on", e);
+        }
+        stop();
+    }
+
+    void stop() {
+        mSeenTypes.clear();
+        if (mOut == null) {
+            return;
+        }
+        try {
+            mOut.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close trace", e);
+        }
+        mOut = null;
+    }
+
+    private void pruneTraces() {
+        final File[] traces = mDir.listFiles();
+        if (traces == null || traces.length < MAX_TRACES) {
+            return;
+        }
+        // Names carry the start time, so the oldest sort first
+        Arrays.sort(traces);
+        for (int i = 0; i <= traces.length - MAX_TRACES; i++) {
+            traces[i].delete();
+        }
+    }
+}
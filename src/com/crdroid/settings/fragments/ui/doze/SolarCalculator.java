@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Sunrise and sunset times from the sunrise equation, accurate to about a minute
+ * away from the polar circles. Plain Java, no Android dependencies.
+ */
+final class SolarCalculator {
+
+    // Julian date of 1970-01-01T12:00Z, and of the J2000 epoch
+    private static final double JULIAN_UNIX_NOON = 2440588.0;
+    private static final double JULIAN_J2000 = 2451545.0;
+    private static final double JULIAN_UNIX_EPOCH = 2440587.5;
+    private static final double MILLIS_PER_DAY = 86400000.0;
+
+    // Refraction and solar disc radius
+    private static final double SUN_ALTITUDE = Math.toRadians(-0.833);
+    private static final double EARTH_TILT = Math.toRadians(23.44);
+
+    private SolarCalculator() {}
+
+    /**
+     * Returns sunrise on the solar day of the given date at the location, or null if
+     * the sun does not rise or does not set that day.
+     */
+    static Instant sunrise(LocalDate date, double latitude, double longitude) {
+        return compute(date, latitude, longitude, true);
+    }
+
+    /**
+     * Returns sunset on the solar day of the given date at the location, or null if
+     * the sun does not rise or does not set that day.
+     */
+    static Instant sunset(LocalDate date, double latitude, double longitude) {
+        return compute(date, latitude, longitude, false);
+    }
+
+    private static Instant compute(LocalDate date, double latitude, double longitude,
+            boolean rise) {
+        final double n = date.toEpochDay() + JULIAN_UNIX_NOON - JULIAN_J2000;
+        // Mean solar noon, longitude east positive
+        final double jStar = n - longitude / 360.0;
+        final double m = Math.toRadians(normalizeDegrees(357.5291 + 0.98560028 * jStar));
+        final double center = 1.9148 * Math.sin(m) + 0.02 * Math.sin(2 * m)
+                + 0.0003 * Math.sin(3 * m);
+        final double lambda = Math.toRadians(
+                normalizeDegrees(Math.toDegrees(m) + center + 180.0 + 102.9372));
+        final double transit = JULIAN_J2000 + jStar + 0.0053 * Math.sin(m)
+                - 0.0069 * Math.sin(2 * lambda);
+
+        final double sinDeclination = Math.sin(lambda) * Math.sin(EARTH_TILT);
+        final double cosDeclination = Math.cos(Math.asin(sinDeclination));
+        final double phi = Math.toRadians(latitude);
+        final double cosHourAngle = (Math.sin(SUN_ALTITUDE) - Math.sin(phi) * sinDeclination)
+                / (Math.cos(phi) * cosDeclination);
+        if (cosHourAngle < -1 || cosHourAngle > 1) {
+            return null;
+        }
+        final double hourAngle = Math.toDegrees(Math.acos(cosHourAngle));
+        final double julian = transit + (rise ? -hourAngle : hourAngle) / 360.0;
+        return Instant.ofEpochMilli(Math.round((julian - JULIAN_UNIX_EPOCH) * MILLIS_PER_DAY));
+    }
+
+    private static double normalizeDegrees(double degrees) {
+        final double result = degrees % 360.0;
+        return result < 0 ? result + 360.0 : result;
+    }
+}
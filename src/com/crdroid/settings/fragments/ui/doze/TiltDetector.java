@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+/**
+ * Rate limits tilt detector events to pulses. Plain Java, shared with the trace replay.
+ */
+final class TiltDetector {
+
+    private final long mMinPulseIntervalNs;
+    private long mLastPulse = Long.MIN_VALUE;
+
+    TiltDetector(long minPulseIntervalNs) {
+        mMinPulseIntervalNs = minPulseIntervalNs;
+    }
+
+    /**
+     * Returns true if the event should pulse.
+     */
+    boolean onSample(long timestampNs, float value) {
+        if (value != 1) {
+            return false;
+        }
+        if (mLastPulse != Long.MIN_VALUE && timestampNs - mLastPulse < mMinPulseIntervalNs) {
+            return false;
+        }
+        mLastPulse = timestampNs;
+        return true;
+    }
+}
@@ -22,21 +22,11 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.os.PowerManager;
-import android.os.PowerManager.WakeLock;
-import android.os.SystemClock;
-import android.os.UserHandle;
-import android.os.VibrationEffect;
-import android.os.Vibrator;
-import android.provider.Settings;
+import android.os.Handler;
 import android.util.Log;
 
 import com.android.settings.R;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
 public class TiltSensor implements SensorEventListener {
 
     private static final boolean DEBUG = false;
@@ -45,19 +35,19 @@ public class TiltSensor implements SensorEventListener {
     private SensorManager mSensorManager;
     private Sensor mSensor;
     private Context mContext;
-    private ExecutorService mExecutorService;
-    private PowerManager mPowerManager;
-    private WakeLock mWakeLock;
+    private PulseArbiter mArbiter;
+    private Handler mHandler;
 
-    private long mEntryTimestamp = 0;
+    private TiltDetector mDetector;
+    private SensorTraceRecorder mRecorder;
     private int mBatchLatencyInMs;
     private int mMinPulseIntervalMs;
     private int mWakelockTimeoutMs;
 
-    private Vibrator mVibrator;
-
-    public TiltSensor(Context context) {
+    public TiltSensor(Context context, PulseArbiter arbiter, Handler handler) {
         mContext = context;
+        mArbiter = arbiter;
+        mHandler = handler;
         final Resources res = context.getResources();
         mBatchLatencyInMs =
             res.getInteger(R.integer.config_dozePulseTilt_BatchLatencyInMs);
@@ -65,6 +55,7 @@ public class TiltSensor implements SensorEventListener {
             res.getInteger(R.integer.config_dozePulseTilt_MinPulseIntervalMs);
         mWakelockTimeoutMs =
             res.getInteger(R.integer.config_dozePulseTilt_WakelockTimeoutMs);
+        mDetector = new TiltDetector(mMinPulseIntervalMs * 1000000L);
         if (DEBUG) {
             Log.d(TAG, "BatchLatencyInMs: " + String.valueOf(mBatchLatencyInMs));
             Log.d(TAG, "MinPulseIntervalMs: " + String.valueOf(mMinPulseIntervalMs));
@@ -72,41 +63,15 @@ public class TiltSensor implements SensorEventListener {
         }
         mSensorManager = mContext.getSystemService(SensorManager.class);
         mSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_TILT_DETECTOR);
-        mPowerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
-        mWakeLock = mPowerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
-        mExecutorService = Executors.newSingleThreadExecutor();
-        mVibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
-        if (mVibrator != null && !mVibrator.hasVibrator()) {
-            mVibrator = null;
-        }
-    }
-
-    private Future<?> submit(Runnable runnable) {
-        return mExecutorService.submit(runnable);
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        boolean isRaiseToWake = Utils.isRaiseToWakeEnabled(mContext);
-
         if (DEBUG) Log.d(TAG, "Got sensor event: " + event.values[0]);
+        if (mRecorder != null) mRecorder.record(event);
 
-        long delta = event.timestamp - mEntryTimestamp;
-        if (delta < mMinPulseIntervalMs) {
-            return;
-        } else {
-            mEntryTimestamp = event.timestamp;
-        }
-
-        if (event.values[0] == 1) {
-            if (isRaiseToWake) {
-                mWakeLock.acquire(mWakelockTimeoutMs);
-                mPowerManager.wakeUp(SystemClock.uptimeMillis(),
-                    PowerManager.WAKE_REASON_GESTURE, TAG);
-            } else {
-                Utils.launchDozePulse(mContext);
-                doHapticFeedback();
-            }
+        if (mDetector.onSample(event.timestamp, event.values[0])) {
+            mArbiter.onTrigger(PulseArbiter.SOURCE_TILT, mWakelockTimeoutMs);
         }
     }
 
@@ -115,31 +80,23 @@ public class TiltSensor implements SensorEventListener {
         /* Empty */
     }
 
+    void setRecorder(SensorTraceRecorder recorder) {
+        mRecorder = recorder;
+    }
+
     protected void enable() {
         if (DEBUG) Log.d(TAG, "Enabling");
-        submit(() -> {
+        mHandler.post(() -> {
             mSensorManager.registerListener(this, mSensor,
                     SensorManager.SENSOR_DELAY_NORMAL,
-                    mBatchLatencyInMs * 1000);
+                    mBatchLatencyInMs * 1000, mHandler);
         });
     }
 
     protected void disable() {
         if (DEBUG) Log.d(TAG, "Disabling");
-        submit(() -> {
+        mHandler.post(() -> {
             mSensorManager.unregisterListener(this, mSensor);
         });
     }
-
-    private void doHapticFeedback() {
-        if (mVibrator == null) {
-            return;
-        }
-        int val = Settings.Secure.getIntForUser(mContext.getContentResolver(),
-                Settings.Secure.DOZE_GESTURE_VIBRATE, 0, UserHandle.USER_CURRENT);
-        if (val > 0) {
-            mVibrator.vibrate(VibrationEffect.createOneShot(val,
-                    VibrationEffect.DEFAULT_AMPLITUDE));
-        }
-    }
 }
@@ -24,6 +24,8 @@ import android.os.UserHandle;
 import android.provider.Settings;
 import android.util.Log;
 
+import com.crdroid.settings.utils.DeviceCapabilities;
+
 public final class Utils {
 
     private static final String TAG = "DozeUtils";
@@ -92,7 +94,9 @@ public final class Utils {
     }
 
     public static boolean enableService(Context context) {
-        if (!getTiltSensor(context) && !getPickupSensor(context) && !getProximitySensor(context))
+        final DeviceCapabilities caps = DeviceCapabilities.get(context);
+        if (!caps.hasDozeTiltSensor() && !caps.hasDozePickupSensor()
+                && !caps.hasDozeProximitySensor())
             return false;
         boolean alwaysOnEnabled = isDozeAlwaysOnEnabled(context);
         if (sensorsEnabled(context) && !alwaysOnEnabled && !mServiceEnabled) {
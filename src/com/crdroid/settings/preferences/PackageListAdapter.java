@@ -26,28 +26,57 @@ import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
+import android.widget.CheckBox;
+import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import com.android.settings.R;
 
+import com.crdroid.settings.utils.AppIconCache;
+import com.crdroid.settings.utils.AppSearchIndex;
+import com.crdroid.settings.utils.PackageChangeMonitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PackageListAdapter extends BaseAdapter implements Runnable,
+        PackageChangeMonitor.Listener {
+    private static final int MSG_ADD = 0;
+    private static final int MSG_UPDATE = 1;
+    private static final int MSG_REMOVE = 2;
 
-public class PackageListAdapter extends BaseAdapter implements Runnable {
     private final PackageManager mPm;
+    private final AppIconCache mIconCache;
+    private final PackageChangeMonitor mPackageMonitor;
     private final LayoutInflater mInflater;
-    private final List<PackageItem> mInstalledPackages = new LinkedList<>();
-    private Set<String> mExcludedPackages = new HashSet<>();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final List<PackageItem> mInstalledPackages = new ArrayList<>();
+    private final AppSearchIndex<PackageItem> mSearchIndex = new AppSearchIndex<>();
+    // Either mInstalledPackages or the subset matching mQuery
+    private List<PackageItem> mVisiblePackages = mInstalledPackages;
+    private String mQuery = "";
+    // Every loaded package by name, for patching in single package changes
+    private final Map<String, PackageItem> mAllPackages = new HashMap<>();
+    // Packages ticked in the picker, kept by name so filtering doesn't lose them
+    private final Set<String> mSelectedPackages = new HashSet<>();
 
     // Packages which don't have launcher icons, but which we want to show nevertheless
     private static final String[] PACKAGE_WHITELIST = new String[] {
@@ -59,13 +88,29 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
     private final Handler mHandler = new Handler(Looper.getMainLooper()) {
         @Override
         public void handleMessage(Message msg) {
-            PackageItem item = (PackageItem) msg.obj;
-            int index = Collections.binarySearch(mInstalledPackages, item);
-            if (index < 0) {
-                mInstalledPackages.add(-index - 1, item);
-            } else {
-                mInstalledPackages.get(index).activityTitles.addAll(item.activityTitles);
+            switch (msg.what) {
+                case MSG_ADD: {
+                    PackageItem item = (PackageItem) msg.obj;
+                    PackageItem existing = mAllPackages.get(item.packageName);
+                    if (existing != null) {
+                        existing.activityTitles.addAll(item.activityTitles);
+                    } else {
+                        mAllPackages.put(item.packageName, item);
+                        insertItem(item);
+                    }
+                    break;
+                }
+                case MSG_UPDATE: {
+                    PackageItem item = (PackageItem) msg.obj;
+                    removeItem(mAllPackages.put(item.packageName, item));
+                    insertItem(item);
+                    break;
+                }
+                case MSG_REMOVE:
+                    removeItem(mAllPackages.remove((String) msg.obj));
+                    break;
             }
+            refilter();
             notifyDataSetChanged();
         }
     };
@@ -91,21 +136,33 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
 
     public PackageListAdapter(Context context) {
         mPm = context.getPackageManager();
+        mIconCache = AppIconCache.getInstance(context);
+        mPackageMonitor = PackageChangeMonitor.getInstance(context);
         mInflater = LayoutInflater.from(context);
+        mPackageMonitor.addListener(this);
         reloadList();
     }
 
+    /**
+     * Stops following package changes. Must be called once the owner is destroyed.
+     */
+    public void destroy() {
+        mPackageMonitor.removeListener(this);
+        mHandler.removeCallbacksAndMessages(null);
+        mExecutor.shutdownNow();
+    }
+
     @Override
     public int getCount() {
         synchronized (mInstalledPackages) {
-            return mInstalledPackages.size();
+            return mVisiblePackages.size();
         }
     }
 
     @Override
     public PackageItem getItem(int position) {
         synchronized (mInstalledPackages) {
-            return mInstalledPackages.get(position);
+            return mVisiblePackages.get(position);
         }
     }
 
@@ -113,7 +170,7 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
     public long getItemId(int position) {
         synchronized (mInstalledPackages) {
             // packageName is guaranteed to be unique in mInstalledPackages
-            return mInstalledPackages.get(position).packageName.hashCode();
+            return mVisiblePackages.get(position).packageName.hashCode();
         }
     }
 
@@ -129,11 +186,13 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
             holder.title = convertView.findViewById(com.android.internal.R.id.title);
             holder.summary = convertView.findViewById(com.android.internal.R.id.summary);
             holder.icon = convertView.findViewById(com.android.internal.R.id.icon);
+            holder.checkbox = convertView.findViewById(R.id.checkbox);
         }
 
         PackageItem applicationInfo = getItem(position);
         holder.title.setText(applicationInfo.title);
         holder.icon.setImageDrawable(applicationInfo.icon);
+        holder.checkbox.setChecked(mSelectedPackages.contains(applicationInfo.packageName));
 
         boolean needSummary = applicationInfo.activityTitles.size() > 0;
         if (applicationInfo.activityTitles.size() == 1) {
@@ -153,8 +212,101 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
     }
 
     private void reloadList() {
-        mInstalledPackages.clear();
-        new Thread(this).start();
+        synchronized (mInstalledPackages) {
+            mInstalledPackages.clear();
+            mVisiblePackages = mInstalledPackages;
+        }
+        mAllPackages.clear();
+        mSearchIndex.clear();
+        mExecutor.execute(this);
+    }
+
+    private void insertItem(PackageItem item) {
+        if (item == null) {
+            return;
+        }
+        synchronized (mInstalledPackages) {
+            int index = Collections.binarySearch(mInstalledPackages, item);
+            if (index < 0) {
+                mInstalledPackages.add(-index - 1, item);
+                mSearchIndex.add(item, item.title, item.packageName);
+            }
+        }
+    }
+
+    private void removeItem(PackageItem item) {
+        if (item == null) {
+            return;
+        }
+        synchronized (mInstalledPackages) {
+            int index = Collections.binarySearch(mInstalledPackages, item);
+            if (index >= 0) {
+                mInstalledPackages.remove(index);
+                mSearchIndex.remove(item);
+            }
+        }
+    }
+
+    /**
+     * Narrows the list to packages whose label or package name contains the query.
+     */
+    public void setFilter(String query) {
+        mQuery = query != null ? query : "";
+        refilter();
+        notifyDataSetChanged();
+    }
+
+    private void refilter() {
+        synchronized (mInstalledPackages) {
+            mVisiblePackages = mSearchIndex.filter(mQuery, mInstalledPackages);
+        }
+    }
+
+    public void setSelectedPackages(Set<String> packages) {
+        mSelectedPackages.clear();
+        mSelectedPackages.addAll(packages);
+        notifyDataSetChanged();
+    }
+
+    public Set<String> getSelectedPackages() {
+        return new HashSet<>(mSelectedPackages);
+    }
+
+    public void toggleSelected(String packageName) {
+        if (!mSelectedPackages.remove(packageName)) {
+            mSelectedPackages.add(packageName);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Inflates a search field on top of a list bound to this adapter. The list
+     * can be found through {@code android.R.id.list}, tapping a row toggles its
+     * selection.
+     */
+    public View inflatePickerView(Context context) {
+        View view = LayoutInflater.from(context).inflate(R.layout.app_picker_dialog, null);
+        ListView list = view.findViewById(android.R.id.list);
+        list.setAdapter(this);
+        list.setDivider(null);
+        list.setOnItemClickListener((parent, itemView, position, id) ->
+                toggleSelected(getItem(position).packageName));
+
+        EditText search = view.findViewById(R.id.search);
+        setFilter(null);
+        search.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                setFilter(s.toString());
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {}
+        });
+        return view;
     }
 
     @Override
@@ -165,39 +317,82 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
 
         for (ResolveInfo info : installedAppsInfo) {
             ApplicationInfo appInfo = info.activityInfo.applicationInfo;
-            if (mExcludedPackages.contains(appInfo.packageName)) {
-                continue;
-            }
-
             final PackageItem item = new PackageItem(appInfo.packageName,
-                    appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
+                    appInfo.loadLabel(mPm), mIconCache.getIcon(appInfo));
             item.activityTitles.add(info.loadLabel(mPm));
-            mHandler.obtainMessage(0, item).sendToTarget();
+            mHandler.obtainMessage(MSG_ADD, item).sendToTarget();
         }
 
         for (String packageName : PACKAGE_WHITELIST) {
-            if (mExcludedPackages.contains(packageName)) {
-                continue;
-            }
             try {
                 ApplicationInfo appInfo = mPm.getApplicationInfo(packageName, 0);
                 final PackageItem item = new PackageItem(appInfo.packageName,
-                        appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
-                mHandler.obtainMessage(0, item).sendToTarget();
+                        appInfo.loadLabel(mPm), mIconCache.getIcon(appInfo));
+                mHandler.obtainMessage(MSG_ADD, item).sendToTarget();
             } catch (PackageManager.NameNotFoundException ignored) {
                 // package not present, so nothing to add -> ignore it
             }
         }
     }
 
-    public void setExcludedPackages(HashSet<String> packages) {
-        mExcludedPackages = packages;
-        reloadList();
+    private PackageItem loadPackage(String packageName) {
+        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        mainIntent.setPackage(packageName);
+        List<ResolveInfo> activities = mPm.queryIntentActivities(mainIntent, 0);
+
+        PackageItem item = null;
+        for (ResolveInfo info : activities) {
+            ApplicationInfo appInfo = info.activityInfo.applicationInfo;
+            if (item == null) {
+                item = new PackageItem(appInfo.packageName,
+                        appInfo.loadLabel(mPm), mIconCache.getIcon(appInfo));
+            }
+            item.activityTitles.add(info.loadLabel(mPm));
+        }
+
+        if (item == null && Arrays.asList(PACKAGE_WHITELIST).contains(packageName)) {
+            try {
+                ApplicationInfo appInfo = mPm.getApplicationInfo(packageName, 0);
+                item = new PackageItem(appInfo.packageName,
+                        appInfo.loadLabel(mPm), mIconCache.getIcon(appInfo));
+            } catch (PackageManager.NameNotFoundException ignored) {
+                // package went away in the meantime
+            }
+        }
+        return item;
+    }
+
+    private void refreshPackage(String packageName) {
+        mExecutor.execute(() -> {
+            PackageItem item = loadPackage(packageName);
+            if (item != null) {
+                mHandler.obtainMessage(MSG_UPDATE, item).sendToTarget();
+            } else {
+                mHandler.obtainMessage(MSG_REMOVE, packageName).sendToTarget();
+            }
+        });
+    }
+
+    @Override
+    public void onPackageAdded(String packageName) {
+        refreshPackage(packageName);
+    }
+
+    @Override
+    public void onPackageChanged(String packageName) {
+        refreshPackage(packageName);
+    }
+
+    @Override
+    public void onPackageRemoved(String packageName) {
+        mHandler.obtainMessage(MSG_REMOVE, packageName).sendToTarget();
     }
 
     private static class ViewHolder {
         TextView title;
         TextView summary;
         ImageView icon;
+        CheckBox checkbox;
     }
 }
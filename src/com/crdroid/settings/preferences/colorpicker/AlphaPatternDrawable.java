@@ -18,45 +18,45 @@ package com.crdroid.settings.preferences.colorpicker;
 
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.Shader.TileMode;
 import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
 
 /**
  * This drawable that draws a simple white and gray chessboard pattern.
  * It's pattern you will often see as a background behind a
  * partly transparent image in many applications.
+ *
+ * The pattern is a repeating shader over one tile of two by two
+ * rectangles, shared by all drawables of the same rectangle size,
+ * so bounds changes are free and memory does not grow with the
+ * number of previews.
  * @author Daniel Nilsson
  */
 public class AlphaPatternDrawable extends Drawable {
 
-    private int mRectangleSize = 10;
-
-    private Paint mPaint = new Paint();
-    private Paint mPaintWhite = new Paint();
-    private Paint mPaintGray = new Paint();
-
-    private int numRectanglesHorizontal;
-    private int numRectanglesVertical;
-
     /**
-     * Bitmap in which the pattern will be cahched.
+     * Tiles by rectangle size.
      */
-    private Bitmap        mBitmap;
+    private static final SparseArray<Bitmap> sTiles = new SparseArray<>();
+
+    private final Paint mPaint = new Paint();
+    private final Matrix mMatrix = new Matrix();
 
     public AlphaPatternDrawable(int rectangleSize) {
-        mRectangleSize = rectangleSize;
-        mPaintWhite.setColor(0xffffffff);
-        mPaintGray.setColor(0xffcbcbcb);
+        mPaint.setShader(new BitmapShader(getTile(Math.max(1, rectangleSize)),
+                TileMode.REPEAT, TileMode.REPEAT));
     }
 
     @Override
     public void draw(Canvas canvas) {
-        if (mBitmap != null) {
-            canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
-        }
+        canvas.drawRect(getBounds(), mPaint);
     }
 
     @Override
@@ -78,53 +78,35 @@ public class AlphaPatternDrawable extends Drawable {
     protected void onBoundsChange(Rect bounds) {
         super.onBoundsChange(bounds);
 
-        int height = bounds.height();
-        int width = bounds.width();
-
-        numRectanglesHorizontal = (int) Math.ceil((width / mRectangleSize));
-        numRectanglesVertical = (int) Math.ceil(height / mRectangleSize);
-
-        generatePatternBitmap();
-
+        // Start the pattern with a white rectangle in the top left corner
+        mMatrix.setTranslate(bounds.left, bounds.top);
+        mPaint.getShader().setLocalMatrix(mMatrix);
     }
 
     /**
-     * This will generate a bitmap with the pattern
-     * as big as the rectangle we were allow to draw on.
-     * We do this to chache the bitmap so we don't need to
-     * recreate it each time draw() is called since it
-     * takes a few milliseconds.
+     * Returns the tile for the rectangle size, generating it
+     * on first use. Tiles are never modified once created.
      */
-    private void generatePatternBitmap(){
+    private static Bitmap getTile(int rectangleSize){
 
-        if(getBounds().width() <= 0 || getBounds().height() <= 0){
-            return;
-        }
-
-        mBitmap = Bitmap.createBitmap(getBounds().width(), getBounds().height(), Config.ARGB_8888);
-        Canvas canvas = new Canvas(mBitmap);
-
-        Rect r = new Rect();
-        boolean verticalStartWhite = true;
-        for (int i = 0; i <= numRectanglesVertical; i++) {
-
-            boolean isWhite = verticalStartWhite;
-            for (int j = 0; j <= numRectanglesHorizontal; j++) {
-
-                r.top = i * mRectangleSize;
-                r.left = j * mRectangleSize;
-                r.bottom = r.top + mRectangleSize;
-                r.right = r.left + mRectangleSize;
-
-                canvas.drawRect(r, isWhite ? mPaintWhite : mPaintGray);
-
-                isWhite = !isWhite;
+        synchronized (sTiles) {
+            Bitmap tile = sTiles.get(rectangleSize);
+            if (tile != null) {
+                return tile;
             }
 
-            verticalStartWhite = !verticalStartWhite;
+            tile = Bitmap.createBitmap(rectangleSize * 2, rectangleSize * 2,
+                    Config.ARGB_8888);
+            tile.eraseColor(0xffffffff);
 
-        }
+            Canvas canvas = new Canvas(tile);
+            Paint gray = new Paint();
+            gray.setColor(0xffcbcbcb);
+            canvas.drawRect(rectangleSize, 0, rectangleSize * 2, rectangleSize, gray);
+            canvas.drawRect(0, rectangleSize, rectangleSize, rectangleSize * 2, gray);
 
+            sTiles.put(rectangleSize, tile);
+            return tile;
+        }
     }
-
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crdroid.settings.preferences.colorpicker;
+
+/**
+ * Color math for the color picker in plain Java.
+ *
+ * The framework HSV conversions go through JNI and need a float array per call,
+ * which adds up on every touch move. Fully saturated hue colors come from a lookup
+ * table, saturation and value are applied in fixed point, and hex strings are
+ * formatted and parsed without String.format or substrings. Results match the
+ * framework conversions within one step per channel.
+ */
+public final class ColorMath {
+
+    // Steps per degree of the hue table
+    private static final int HUE_STEPS = 8;
+    private static final int FIXED_ONE = 1 << 16;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private ColorMath() {}
+
+    /**
+     * Built by the class loader on first use, which also publishes it safely to
+     * every thread.
+     */
+    private static final class HueTable {
+        static final int[] COLORS = new int[360 * HUE_STEPS + 1];
+
+        static {
+            for (int i = 0; i < COLORS.length; i++) {
+                COLORS[i] = computeHueColor((float) i / HUE_STEPS);
+            }
+        }
+    }
+
+    /**
+     * Built on first use, like HueTable.
+     */
+    private static final class HueGradient {
+        static final int[] COLORS = new int[361];
+
+        static {
+            for (int i = 0; i < COLORS.length; i++) {
+                COLORS[i] = hueToColor(360 - i);
+            }
+        }
+    }
+
+    /**
+     * Returns the opaque, fully saturated color of a hue in degrees.
+     */
+    public static int hueToColor(float hue) {
+        final int[] table = HueTable.COLORS;
+        int index = (int) (hue * HUE_STEPS + 0.5f);
+        if (index < 0) {
+            index = 0;
+        } else if (index >= table.length) {
+            index = table.length - 1;
+        }
+        return table[index];
+    }
+
+    /**
+     * Same as Color.HSVToColor(alpha, new float[] {hue, sat, val}).
+     */
+    public static int hsvToColor(int alpha, float hue, float sat, float val) {
+        final int hueColor = hueToColor(hue);
+        final long s = clampFixed(sat);
+        final long v = clampFixed(val);
+        return (alpha << 24)
+                | (applySatVal((hueColor >> 16) & 0xff, s, v) << 16)
+                | (applySatVal((hueColor >> 8) & 0xff, s, v) << 8)
+                | applySatVal(hueColor & 0xff, s, v);
+    }
+
+    /**
+     * Same as Color.colorToHSV(color, hsv).
+     */
+    public static void colorToHsv(int color, float[] hsv) {
+        final int r = (color >> 16) & 0xff;
+        final int g = (color >> 8) & 0xff;
+        final int b = color & 0xff;
+        final int max = Math.max(r, Math.max(g, b));
+        final int delta = max - Math.min(r, Math.min(g, b));
+
+        hsv[2] = max / 255f;
+        if (delta == 0) {
+            hsv[0] = 0f;
+            hsv[1] = 0f;
+            return;
+        }
+        hsv[1] = (float) delta / max;
+
+        float hue;
+        if (r == max) {
+            hue = (float) (g - b) / delta;
+        } else if (g == max) {
+            hue = 2f + (float) (b - r) / delta;
+        } else {
+            hue = 4f + (float) (r - g) / delta;
+        }
+        hue *= 60f;
+        hsv[0] = hue < 0f ? hue + 360f : hue;
+    }
+
+    /**
+     * Returns the hue gradient of the picker, from 360 degrees down to 0.
+     * Shared, callers must not modify it.
+     */
+    public static int[] getHueGradient() {
+        return HueGradient.COLORS;
+    }
+
+    /**
+     * Appends the lowest {@code digits} hex digits of the value in lower case.
+     */
+    public static StringBuilder appendHex(StringBuilder out, int value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            out.append(HEX_DIGITS[(value >>> shift) & 0xf]);
+        }
+        return out;
+    }
+
+    /**
+     * Formats the color as rrggbb, or aarrggbb if {@code withAlpha} is set.
+     */
+    public static String toHex(int color, boolean withAlpha) {
+        return appendHex(new StringBuilder(8), color, withAlpha ? 8 : 6).toString();
+    }
+
+    /**
+     * Parses rrggbb or aarrggbb with an optional leading '#'. Colors without alpha
+     * are opaque.
+     *
+     * @throws NumberFormatException if the text is not such a color
+     */
+    public static int parseHex(CharSequence text) throws NumberFormatException {
+        final int start = text.length() > 0 && text.charAt(0) == '#' ? 1 : 0;
+        final int digits = text.length() - start;
+        if (digits != 6 && digits != 8) {
+            throw new NumberFormatException("Not a color: " + text);
+        }
+        int color = digits == 6 ? 0xff : 0;
+        for (int i = start; i < text.length(); i++) {
+            final int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                throw new NumberFormatException("Not a color: " + text);
+            }
+            color = (color << 4) | digit;
+        }
+        return color;
+    }
+
+    private static int computeHueColor(float hue) {
+        final float sector = (hue >= 360f ? 0f : hue) / 60f;
+        final int rising = Math.round((sector - (int) sector) * 255f);
+        final int falling = 255 - rising;
+        switch ((int) sector) {
+            case 0: return 0xffff0000 | (rising << 8);
+            case 1: return 0xff00ff00 | (falling << 16);
+            case 2: return 0xff00ff00 | rising;
+            case 3: return 0xff0000ff | (falling << 8);
+            case 4: return 0xff0000ff | (rising << 16);
+            default: return 0xffff0000 | falling;
+        }
+    }
+
+    private static long clampFixed(float value) {
+        if (value <= 0f) return 0;
+        if (value >= 1f) return FIXED_ONE;
+        return (long) (value * FIXED_ONE + 0.5f);
+    }
+
+    /**
+     * val * (1 - sat * (1 - channel)), with sat and val in 16.16 fixed point.
+     */
+    private static int applySatVal(int channel, long sat, long val) {
+        final long unsaturated = 255L * FIXED_ONE - sat * (255 - channel);
+        return (int) ((unsaturated * val + ((long) FIXED_ONE * FIXED_ONE >> 1))
+                / ((long) FIXED_ONE * FIXED_ONE));
+    }
+}
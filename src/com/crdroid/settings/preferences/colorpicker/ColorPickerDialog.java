@@ -45,6 +45,7 @@ public class ColorPickerDialog extends AlertDialog implements ColorPickerView.On
     private ColorPickerPanelView mRed;
     private ColorPickerPanelView mGreen;
     private ColorPickerPanelView mYellow;
+    private LinearLayout mSwatches;
 
     private OnColorChangedListener mListener;
 
@@ -103,6 +104,11 @@ public class ColorPickerDialog extends AlertDialog implements ColorPickerView.On
         setColorAndClickAction(mGreen, 0xff76c124);
         setColorAndClickAction(mYellow, 0xffffc90f);
 
+        mSwatches = layout.findViewById(R.id.wallpaper_swatches);
+        if (mSwatches != null) {
+            WallpaperSwatches.getInstance(getContext()).bindRow(mSwatches, mColorPicker);
+        }
+
         if (mHex != null) {
             mHex.setText(ColorPickerPreference.convertToARGB(color));
         }
@@ -171,6 +177,14 @@ public class ColorPickerDialog extends AlertDialog implements ColorPickerView.On
         dismiss();
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (mSwatches != null) {
+            WallpaperSwatches.getInstance(getContext()).unbindRow(mSwatches);
+        }
+    }
+
     @NonNull
     @Override
     public Bundle onSaveInstanceState() {
@@ -70,6 +70,7 @@ public class ColorPickerPanelView extends View {
         mBorderPaint = new Paint();
         mColorPaint = new Paint();
         mDensity = getContext().getResources().getDisplayMetrics().density;
+        mAlphaPattern = new AlphaPatternDrawable((int)(5 * mDensity));
     }
 
 
@@ -125,8 +126,6 @@ public class ColorPickerPanelView extends View {
 
         mColorRect = new RectF(left,top, right, bottom);
 
-        mAlphaPattern = new AlphaPatternDrawable((int)(5 * mDensity));
-
         mAlphaPattern.setBounds(
             Math.round(mColorRect.left),
             Math.round(mColorRect.top),
@@ -75,6 +75,13 @@ public class ColorPickerPreference extends Preference implements
     private boolean mAutoSummary = true;
     private EditText mEditText;
 
+    // Preview of the current color, recreated only when the color changes
+    private ShapeDrawable mPreviewDrawable;
+    private int mPreviewDrawableColor;
+
+    private final View.OnClickListener mClickListener = v -> showDialog(null);
+    private final View.OnClickListener mResetClickListener = v -> onColorChanged(mDefaultValue);
+
     public ColorPickerPreference(Context context, AttributeSet attrs, int defStyleAttr) {
         this(context, attrs, defStyleAttr, 0);
     }
@@ -137,12 +144,7 @@ public class ColorPickerPreference extends Preference implements
         view.setDividerAllowedAbove(mDividerAbove);
         view.setDividerAllowedBelow(mDividerBelow);
 
-        view.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                showDialog(null);
-            }
-        });
+        view.itemView.setOnClickListener(mClickListener);
         mWidgetFrameView = ((LinearLayout) view
                 .findViewById(android.R.id.widget_frame));
         mWidgetFrameView.setOrientation(LinearLayout.HORIZONTAL);
@@ -154,10 +156,30 @@ public class ColorPickerPreference extends Preference implements
                 (int) (mDensity * 8),
                 mWidgetFrameView.getPaddingBottom()
                 );
+        // Holders are only shared between color pickers, build the widgets once per holder
+        if (mWidgetFrameView.findViewWithTag("preview") == null) {
+            createWidgetViews();
+        }
         setDefaultButton();
         setPreviewColor();
     }
 
+    private void createWidgetViews() {
+        ImageView defView = new ImageView(getContext());
+        defView.setImageDrawable(getContext().getDrawable(R.drawable.ic_settings_backup_restore));
+        defView.setTag("default");
+        mWidgetFrameView.addView(defView);
+        // sorcery for a linear layout ugh
+        View spacer = new View(getContext());
+        spacer.setTag("spacer");
+        spacer.setLayoutParams(new LinearLayout.LayoutParams((int) (mDensity * 16),
+                LayoutParams.MATCH_PARENT));
+        mWidgetFrameView.addView(spacer);
+        ImageView iView = new ImageView(getContext());
+        iView.setTag("preview");
+        mWidgetFrameView.addView(iView);
+    }
+
     /**
      * Restore a default value, not necessarily a color
      * For example: Set default value to -1 to remove a color filter
@@ -165,62 +187,44 @@ public class ColorPickerPreference extends Preference implements
      * @author Randall Rushing aka Bigrushdog
      */
     private void setDefaultButton() {
-        if (!mShowReset || mView == null || mWidgetFrameView == null)
+        if (mView == null || mWidgetFrameView == null)
             return;
 
-        // remove already created default button
-        int count = mWidgetFrameView.getChildCount();
-        if (count > 0) {
-            View oldView = mWidgetFrameView.findViewWithTag("default");
-            View spacer = mWidgetFrameView.findViewWithTag("spacer");
-            if (oldView != null) {
-                mWidgetFrameView.removeView(oldView);
-            }
-            if (spacer != null) {
-                mWidgetFrameView.removeView(spacer);
-            }
-        }
-
-        if (!isEnabled()) return;
+        View defView = mWidgetFrameView.findViewWithTag("default");
+        View spacer = mWidgetFrameView.findViewWithTag("spacer");
+        if (defView == null || spacer == null) return;
 
-        ImageView defView = new ImageView(getContext());
-        mWidgetFrameView.addView(defView);
-        defView.setImageDrawable(getContext().getDrawable(R.drawable.ic_settings_backup_restore));
-        defView.setTag("default");
-        defView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                onColorChanged(mDefaultValue);
-            }
-        });
-        // sorcery for a linear layout ugh
-        View spacer = new View(getContext());
-        spacer.setTag("spacer");
-        spacer.setLayoutParams(new LinearLayout.LayoutParams((int) (mDensity * 16),
-                LayoutParams.MATCH_PARENT));
-        mWidgetFrameView.addView(spacer);
+        final int visibility = mShowReset && isEnabled() ? View.VISIBLE : View.GONE;
+        defView.setVisibility(visibility);
+        spacer.setVisibility(visibility);
+        defView.setOnClickListener(mResetClickListener);
     }
 
     private void setPreviewColor() {
-        if (!mShowPreview || mView == null || mWidgetFrameView == null)
+        if (mView == null || mWidgetFrameView == null)
             return;
 
-        // remove already create preview image
-        int count = mWidgetFrameView.getChildCount();
-        if (count > 0) {
-            View preview = mWidgetFrameView.findViewWithTag("preview");
-            if (preview != null) {
-                mWidgetFrameView.removeView(preview);
-            }
+        ImageView iView = mWidgetFrameView.findViewWithTag("preview");
+        if (iView == null) return;
+
+        if (!mShowPreview || !isEnabled()) {
+            iView.setVisibility(View.GONE);
+            return;
         }
-        if (!isEnabled()) return;
-        ImageView iView = new ImageView(getContext());
-        mWidgetFrameView.addView(iView);
-        final int size = (int) getContext().getResources().getDimension(R.dimen.oval_notification_size);
+        iView.setVisibility(View.VISIBLE);
+        iView.setImageDrawable(getPreviewDrawable());
+    }
+
+    private ShapeDrawable getPreviewDrawable() {
         final int imageColor = ((mCurrentValue & 0xF0F0F0) == 0xF0F0F0) ?
                 (mCurrentValue - 0x101010) : mCurrentValue;
-        iView.setImageDrawable(createOvalShape(size, 0xFF000000 + imageColor));
-        iView.setTag("preview");
+        final int color = 0xFF000000 + imageColor;
+        if (mPreviewDrawable == null || mPreviewDrawableColor != color) {
+            final int size = (int) getContext().getResources().getDimension(R.dimen.oval_notification_size);
+            mPreviewDrawable = createOvalShape(size, color);
+            mPreviewDrawableColor = color;
+        }
+        return mPreviewDrawable;
     }
 
     @Override
@@ -288,28 +292,7 @@ public class ColorPickerPreference extends Preference implements
      * @author Unknown
      */
     public static String convertToARGB(int color) {
-        String alpha = Integer.toHexString(Color.alpha(color));
-        String red = Integer.toHexString(Color.red(color));
-        String green = Integer.toHexString(Color.green(color));
-        String blue = Integer.toHexString(Color.blue(color));
-
-        if (alpha.length() == 1) {
-            alpha = "0" + alpha;
-        }
-
-        if (red.length() == 1) {
-            red = "0" + red;
-        }
-
-        if (green.length() == 1) {
-            green = "0" + green;
-        }
-
-        if (blue.length() == 1) {
-            blue = "0" + blue;
-        }
-
-        return "#" + alpha + red + green + blue;
+        return ColorMath.appendHex(new StringBuilder(9).append('#'), color, 8).toString();
     }
 
     /**
@@ -320,27 +303,7 @@ public class ColorPickerPreference extends Preference implements
      * @author Unknown
      */
     public static int convertToColorInt(String argb) throws NumberFormatException {
-
-        if (argb.startsWith("#")) {
-            argb = argb.replace("#", "");
-        }
-
-        int alpha = -1, red = -1, green = -1, blue = -1;
-
-        if (argb.length() == 8) {
-            alpha = Integer.parseInt(argb.substring(0, 2), 16);
-            red = Integer.parseInt(argb.substring(2, 4), 16);
-            green = Integer.parseInt(argb.substring(4, 6), 16);
-            blue = Integer.parseInt(argb.substring(6, 8), 16);
-        }
-        else if (argb.length() == 6) {
-            alpha = 255;
-            red = Integer.parseInt(argb.substring(0, 2), 16);
-            green = Integer.parseInt(argb.substring(2, 4), 16);
-            blue = Integer.parseInt(argb.substring(4, 6), 16);
-        }
-
-        return Color.argb(alpha, red, green, blue);
+        return ColorMath.parseHex(argb);
     }
 
     /**
@@ -18,19 +18,21 @@
 package com.crdroid.settings.preferences.colorpicker;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.ComposeShader;
 import android.graphics.LinearGradient;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
 import android.graphics.Point;
-import android.graphics.PorterDuff;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.graphics.Shader.TileMode;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 
@@ -39,6 +41,19 @@ import android.view.View;
  * to select a color. A slider for the alpha channel is
  * also available. Enable it by setting
  * setAlphaSliderVisible(boolean) to true.
+ *
+ * This is the only color picker of the app, shared by the color
+ * picker preferences and the notification light dialog.
+ *
+ * Color changes made by the user are delivered on the next frame
+ * with the latest color, at most once per frame. Listeners that
+ * drive hardware or persist settings can ask for a lower rate.
+ *
+ * Drawing does not allocate, so dragging a tracker redraws on the
+ * hardware renderer without garbage. The saturation/value square is
+ * rendered into a small bitmap once per hue bucket and scaled up with
+ * filtering, which is exact since each channel is bilinear in
+ * saturation and value.
  * @author Daniel Nilsson
  */
 public class ColorPickerView extends View {
@@ -76,10 +91,24 @@ public class ColorPickerView extends View {
      */
     private float        RECTANGLE_TRACKER_OFFSET = 2f;
 
+    /**
+     * Edge in pixels of the cached saturation/value bitmap.
+     */
+    private final static int    SAT_VAL_BITMAP_SIZE = 64;
+    /**
+     * Number of hue buckets per degree the saturation/value
+     * bitmap is rendered for.
+     */
+    private final static int    HUE_BUCKETS_PER_DEGREE = 1;
+
 
     private float         mDensity = 1f;
 
-    private OnColorChangedListener    mListener;
+    private final Dispatcher    mPreviewDispatcher = new Dispatcher();
+    private final Dispatcher    mCommitDispatcher = new Dispatcher();
+    private final Choreographer.FrameCallback    mDispatchCallback = this::dispatchFrame;
+    private boolean    mDispatchScheduled;
+    private boolean    mFlushPending;
 
     private Paint         mSatValPaint;
     private Paint        mSatValTrackerPaint;
@@ -92,11 +121,31 @@ public class ColorPickerView extends View {
 
     private Paint        mBorderPaint;
 
-    private Shader        mValShader;
-    private Shader        mSatShader;
     private Shader        mHueShader;
     private Shader        mAlphaShader;
 
+    /*
+     * Saturation/value square of the current hue bucket, and the
+     * pixel buffer it is rendered from.
+     */
+    private Bitmap        mSatValBitmap;
+    private int[]        mSatValPixels;
+    private int            mSatValHueBucket = -1;
+
+    /*
+     * Alpha ramp, tinted with the paint color when drawn.
+     */
+    private Bitmap        mAlphaRamp;
+    private final Matrix    mAlphaMatrix = new Matrix();
+
+    /*
+     * Scratch objects reused by drawing and touch handling.
+     */
+    private final float[]    mHsv = new float[3];
+    private final Point        mTrackerPoint = new Point();
+    private final RectF        mTrackerRect = new RectF();
+    private final float[]    mSatValResult = new float[2];
+
     private int            mAlpha = 0xff;
     private float        mHue = 360f;
     private float         mSat = 0f;
@@ -133,12 +182,71 @@ public class ColorPickerView extends View {
 
     private AlphaPatternDrawable    mAlphaPattern;
 
-    private Point    mStartTouchPoint = null;
+    private boolean    mTouching;
+    private int        mStartTouchX;
+    private int        mStartTouchY;
 
     public interface OnColorChangedListener {
         public void onColorChanged(int color);
     }
 
+    /**
+     * Rate limited delivery of the latest color to one listener.
+     */
+    private static class Dispatcher {
+
+        OnColorChangedListener listener;
+        long minIntervalNs;
+
+        private boolean mPending;
+        private boolean mDelivered;
+        private long mLastDeliveryNs;
+        private int mLastColor;
+
+        void set(OnColorChangedListener listener, long minIntervalMs){
+            this.listener = listener;
+            this.minIntervalNs = minIntervalMs * 1000000L;
+            mPending = false;
+            mDelivered = false;
+        }
+
+        void markPending(){
+            mPending = listener != null;
+        }
+
+        void clearPending(){
+            mPending = false;
+        }
+
+        /**
+         * Delivers the color if it is due, and returns whether
+         * a delivery is still pending afterwards.
+         */
+        boolean dispatch(int color, long frameTimeNs, boolean flush){
+            if(!mPending) return false;
+
+            if(!flush && mDelivered && frameTimeNs - mLastDeliveryNs < minIntervalNs){
+                return true;
+            }
+
+            mPending = false;
+            if(mDelivered && color == mLastColor) return false;
+
+            deliver(color, frameTimeNs);
+            return false;
+        }
+
+        void deliver(int color, long timeNs){
+            mPending = false;
+            mDelivered = true;
+            mLastDeliveryNs = timeNs;
+            mLastColor = color;
+            if(listener != null){
+                listener.onColorChanged(color);
+            }
+        }
+    }
+
     public ColorPickerView(Context context){
         this(context, null);
     }
@@ -153,7 +261,6 @@ public class ColorPickerView extends View {
     }
 
     private void init(){
-        setLayerType(View.LAYER_TYPE_SOFTWARE, null);
         mDensity = getContext().getResources().getDisplayMetrics().density;
         PALETTE_CIRCLE_TRACKER_RADIUS *= mDensity;
         RECTANGLE_TRACKER_OFFSET *= mDensity;
@@ -168,6 +275,7 @@ public class ColorPickerView extends View {
         //Needed for receiving trackball motion events.
         setFocusable(true);
         setFocusableInTouchMode(true);
+        setClickable(true);
     }
 
     private void initPaintTools(){
@@ -196,6 +304,8 @@ public class ColorPickerView extends View {
         mAlphaTextPaint.setTextAlign(Align.CENTER);
         mAlphaTextPaint.setFakeBoldText(true);
 
+        mSatValPaint.setFilterBitmap(true);
+        mAlphaPaint.setFilterBitmap(true);
 
     }
 
@@ -206,16 +316,43 @@ public class ColorPickerView extends View {
         return offset * 1.5f;
     }
 
-    private int[] buildHueColorArray(){
+    /**
+     * Renders the saturation/value square for the hue bucket
+     * of the current hue, if it is not the cached one.
+     */
+    private void updateSatValBitmap(){
 
-        int[] hue = new int[361];
+        int bucket = (int) (mHue * HUE_BUCKETS_PER_DEGREE);
+        if(bucket == mSatValHueBucket && mSatValBitmap != null) return;
 
-        int count = 0;
-        for(int i = hue.length -1; i >= 0; i--, count++){
-            hue[count] = Color.HSVToColor(new float[]{i, 1f, 1f});
+        final int size = SAT_VAL_BITMAP_SIZE;
+        if(mSatValBitmap == null){
+            mSatValBitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            mSatValPixels = new int[size * size];
         }
 
-        return hue;
+        int rgb = ColorMath.hueToColor((float) bucket / HUE_BUCKETS_PER_DEGREE);
+        int red = Color.red(rgb);
+        int green = Color.green(rgb);
+        int blue = Color.blue(rgb);
+
+        // Each channel is val * (1 - sat + sat * hue channel)
+        final int[] pixels = mSatValPixels;
+        final int max = size - 1;
+        for(int y = 0, i = 0; y < size; y++){
+            int val = 255 * (max - y) / max;
+            for(int x = 0; x < size; x++, i++){
+                int r = 255 * max - x * (255 - red);
+                int g = 255 * max - x * (255 - green);
+                int b = 255 * max - x * (255 - blue);
+                pixels[i] = 0xff000000
+                        | ((r * val / (255 * max)) << 16)
+                        | ((g * val / (255 * max)) << 8)
+                        | (b * val / (255 * max));
+            }
+        }
+        mSatValBitmap.setPixels(pixels, 0, size, 0, 0, size, size);
+        mSatValHueBucket = bucket;
     }
 
 
@@ -241,20 +378,8 @@ public class ColorPickerView extends View {
                 rect.bottom + BORDER_WIDTH_PX, mBorderPaint);
         }
 
-        if (mValShader == null) {
-            mValShader = new LinearGradient(rect.left, rect.top, rect.left, rect.bottom,
-                    0xffffffff, 0xff000000, TileMode.CLAMP);
-        }
-
-        int rgb = Color.HSVToColor(new float[]{mHue,1f,1f});
-
-        mSatShader = new LinearGradient(rect.left, rect.top, rect.right, rect.top,
-                0xffffffff, rgb, TileMode.CLAMP);
-        ComposeShader mShader = new ComposeShader(
-            mValShader, mSatShader, PorterDuff.Mode.MULTIPLY);
-        mSatValPaint.setShader(mShader);
-
-        canvas.drawRect(rect, mSatValPaint);
+        updateSatValBitmap();
+        canvas.drawBitmap(mSatValBitmap, null, rect, mSatValPaint);
 
         Point p = satValToPoint(mSat, mVal);
 
@@ -283,7 +408,7 @@ public class ColorPickerView extends View {
         if (mHueShader == null) {
             mHueShader = new LinearGradient(
                 rect.left, rect.top, rect.left, rect.bottom,
-                buildHueColorArray(), null, TileMode.CLAMP);
+                ColorMath.getHueGradient(), null, TileMode.CLAMP);
             mHuePaint.setShader(mHueShader);
         }
 
@@ -293,7 +418,7 @@ public class ColorPickerView extends View {
 
         Point p = hueToPoint(mHue);
 
-        RectF r = new RectF();
+        RectF r = mTrackerRect;
         r.left = rect.left - RECTANGLE_TRACKER_OFFSET;
         r.right = rect.right + RECTANGLE_TRACKER_OFFSET;
         r.top = p.y - rectHeight;
@@ -322,15 +447,16 @@ public class ColorPickerView extends View {
 
         mAlphaPattern.draw(canvas);
 
-        float[] hsv = new float[]{mHue,mSat,mVal};
-        int color = Color.HSVToColor(hsv);
-        int acolor = Color.HSVToColor(0, hsv);
-
-        mAlphaShader = new LinearGradient(rect.left, rect.top, rect.right, rect.top,
-                color, acolor, TileMode.CLAMP);
-
+        if (mAlphaShader == null) {
+            mAlphaShader = new BitmapShader(getAlphaRamp(), TileMode.CLAMP, TileMode.CLAMP);
+            mAlphaMatrix.setScale(rect.width() / mAlphaRamp.getWidth(), rect.height());
+            mAlphaMatrix.postTranslate(rect.left, rect.top);
+            mAlphaShader.setLocalMatrix(mAlphaMatrix);
+            mAlphaPaint.setShader(mAlphaShader);
+        }
 
-        mAlphaPaint.setShader(mAlphaShader);
+        // The ramp only carries alpha, the paint color tints it
+        mAlphaPaint.setColor(ColorMath.hsvToColor(0xff, mHue, mSat, mVal));
 
         canvas.drawRect(rect, mAlphaPaint);
 
@@ -343,7 +469,7 @@ public class ColorPickerView extends View {
 
         Point p = alphaToPoint(mAlpha);
 
-        RectF r = new RectF();
+        RectF r = mTrackerRect;
         r.left = p.x - rectWidth;
         r.right = p.x + rectWidth;
         r.top = rect.top - RECTANGLE_TRACKER_OFFSET;
@@ -354,12 +480,26 @@ public class ColorPickerView extends View {
     }
 
 
+    private Bitmap getAlphaRamp(){
+
+        if(mAlphaRamp == null){
+            mAlphaRamp = Bitmap.createBitmap(256, 1, Bitmap.Config.ALPHA_8);
+            int[] pixels = new int[256];
+            for(int i = 0; i < pixels.length; i++){
+                pixels[i] = (0xff - i) << 24;
+            }
+            mAlphaRamp.setPixels(pixels, 0, pixels.length, 0, 0, pixels.length, 1);
+        }
+
+        return mAlphaRamp;
+    }
+
     private Point hueToPoint(float hue){
 
         final RectF rect = mHueRect;
         final float height = rect.height();
 
-        Point p = new Point();
+        Point p = mTrackerPoint;
 
         p.y = (int) (height - (hue * height / 360f) + rect.top);
         p.x = (int) rect.left;
@@ -373,7 +513,7 @@ public class ColorPickerView extends View {
         final float height = rect.height();
         final float width = rect.width();
 
-        Point p = new Point();
+        Point p = mTrackerPoint;
 
         p.x = (int) (sat * width + rect.left);
         p.y = (int) ((1f - val) * height + rect.top);
@@ -386,7 +526,7 @@ public class ColorPickerView extends View {
         final RectF rect = mAlphaRect;
         final float width = rect.width();
 
-        Point p = new Point();
+        Point p = mTrackerPoint;
 
         p.x = (int) (width - (alpha * width / 0xff) + rect.left);
         p.y = (int) rect.top;
@@ -398,7 +538,7 @@ public class ColorPickerView extends View {
     private float[] pointToSatVal(float x, float y){
 
         final RectF rect = mSatValRect;
-        float[] result = new float[2];
+        float[] result = mSatValResult;
 
         float width = rect.width();
         float height = rect.height();
@@ -558,9 +698,7 @@ public class ColorPickerView extends View {
 
         if(update){
 
-            if(mListener != null){
-                mListener.onColorChanged(Color.HSVToColor(mAlpha, new float[]{mHue, mSat, mVal}));
-            }
+            scheduleDispatch(false);
 
             invalidate();
             return true;
@@ -579,10 +717,18 @@ public class ColorPickerView extends View {
 
         case MotionEvent.ACTION_DOWN:
 
-            mStartTouchPoint = new Point((int)event.getX(), (int)event.getY());
+            mTouching = true;
+            mStartTouchX = (int) event.getX();
+            mStartTouchY = (int) event.getY();
 
             update = moveTrackersIfNeeded(event);
 
+            if(update){
+                // Takes the focus from text inputs, so they commit their value.
+                // Once per gesture, moves only follow the trackers.
+                requestFocus();
+            }
+
             break;
 
         case MotionEvent.ACTION_MOVE:
@@ -593,19 +739,23 @@ public class ColorPickerView extends View {
 
         case MotionEvent.ACTION_UP:
 
-            mStartTouchPoint = null;
+            mTouching = false;
 
             update = moveTrackersIfNeeded(event);
 
+            // The final color of a drag skips the rate limits, a tap
+            // outside the panels has nothing to deliver
+            if(update || mDispatchScheduled){
+                mFlushPending = true;
+            }
+
             break;
 
         }
 
         if(update){
 
-            if(mListener != null){
-                mListener.onColorChanged(Color.HSVToColor(mAlpha, new float[]{mHue, mSat, mVal}));
-            }
+            scheduleDispatch(false);
 
             invalidate();
             return true;
@@ -615,14 +765,58 @@ public class ColorPickerView extends View {
         return super.onTouchEvent(event);
     }
 
+    private void scheduleDispatch(boolean flush){
+
+        mPreviewDispatcher.markPending();
+        mCommitDispatcher.markPending();
+        mFlushPending |= flush;
+
+        if(!mDispatchScheduled){
+            mDispatchScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mDispatchCallback);
+        }
+    }
+
+    private void dispatchFrame(long frameTimeNanos){
+
+        mDispatchScheduled = false;
+
+        final boolean flush = mFlushPending;
+        mFlushPending = false;
+
+        final int color = getColor();
+        boolean pending = mPreviewDispatcher.dispatch(color, frameTimeNanos, flush);
+        pending |= mCommitDispatcher.dispatch(color, frameTimeNanos, flush);
+
+        // Try again next frame until the rate limits allow delivery
+        if(pending && !mDispatchScheduled){
+            mDispatchScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mDispatchCallback);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        // Colors still waiting are dropped, the owner is going away
+        if(mDispatchScheduled){
+            Choreographer.getInstance().removeFrameCallback(mDispatchCallback);
+            mDispatchScheduled = false;
+        }
+        mFlushPending = false;
+        mPreviewDispatcher.clearPending();
+        mCommitDispatcher.clearPending();
+    }
+
     private boolean moveTrackersIfNeeded(MotionEvent event){
 
-        if(mStartTouchPoint == null) return false;
+        if(!mTouching) return false;
 
         boolean update = false;
 
-        int startX = mStartTouchPoint.x;
-        int startY = mStartTouchPoint.y;
+        int startX = mStartTouchX;
+        int startY = mStartTouchY;
 
 
         if(mHueRect.contains(startX, startY)){
@@ -756,6 +950,10 @@ public class ColorPickerView extends View {
         setUpSatValRect();
         setUpHueRect();
         setUpAlphaRect();
+
+        // Shaders are laid out in view coordinates
+        mHueShader = null;
+        mAlphaShader = null;
     }
 
     private void setUpSatValRect(){
@@ -800,7 +998,9 @@ public class ColorPickerView extends View {
 
         mAlphaRect = new RectF(left, top, right, bottom);
 
-        mAlphaPattern = new AlphaPatternDrawable((int) (5 * mDensity));
+        if(mAlphaPattern == null){
+            mAlphaPattern = new AlphaPatternDrawable((int) (5 * mDensity));
+        }
         mAlphaPattern.setBounds(
             Math.round(mAlphaRect.left),
             Math.round(mAlphaRect.top),
@@ -813,11 +1013,35 @@ public class ColorPickerView extends View {
 
     /**
      * Set a OnColorChangedListener to get notified when the color
-     * selected by the user has changed.
+     * selected by the user has changed, at most once per frame.
      * @param listener
      */
     public void setOnColorChangedListener(OnColorChangedListener listener){
-        mListener = listener;
+        setOnColorChangedListener(listener, 0);
+    }
+
+    /**
+     * Set a OnColorChangedListener for previews of the color,
+     * notified at most once per frame and once per interval.
+     * @param listener
+     * @param minIntervalMs
+     */
+    public void setOnColorChangedListener(OnColorChangedListener listener,
+            long minIntervalMs){
+        mPreviewDispatcher.set(listener, minIntervalMs);
+    }
+
+    /**
+     * Set a OnColorChangedListener for consumers that are costly to
+     * update, like hardware or persisted settings. It is notified at
+     * most once per interval while the user drags, and always with
+     * the color the user lets go at.
+     * @param listener
+     * @param minIntervalMs
+     */
+    public void setOnColorCommitListener(OnColorChangedListener listener,
+            long minIntervalMs){
+        mCommitDispatcher.set(listener, minIntervalMs);
     }
 
     /**
@@ -841,7 +1065,7 @@ public class ColorPickerView extends View {
      * @return the current color.
      */
     public int getColor(){
-        return Color.HSVToColor(mAlpha, new float[]{mHue,mSat,mVal});
+        return ColorMath.hsvToColor(mAlpha, mHue, mSat, mVal);
     }
 
     /**
@@ -860,22 +1084,20 @@ public class ColorPickerView extends View {
      */
     public void setColor(int color, boolean callback){
 
-        int alpha = Color.alpha(color);
-        int red = Color.red(color);
-        int blue = Color.blue(color);
-        int green = Color.green(color);
-
-        float[] hsv = new float[3];
+        float[] hsv = mHsv;
 
-        Color.RGBToHSV(red, green, blue, hsv);
+        ColorMath.colorToHsv(color, hsv);
 
-        mAlpha = alpha;
+        mAlpha = Color.alpha(color);
         mHue = hsv[0];
         mSat = hsv[1];
         mVal = hsv[2];
 
-        if(callback && mListener != null){
-            mListener.onColorChanged(Color.HSVToColor(mAlpha, new float[]{mHue, mSat, mVal}));
+        if(callback){
+            final int newColor = getColor();
+            final long now = System.nanoTime();
+            mPreviewDispatcher.deliver(newColor, now);
+            mCommitDispatcher.deliver(newColor, now);
         }
 
         invalidate();
@@ -908,16 +1130,18 @@ public class ColorPickerView extends View {
              * Otherwise they will not look right after
              * the size of the view has changed.
              */
-            mValShader = null;
-            mSatShader = null;
             mHueShader = null;
-            mAlphaShader = null;;
+            mAlphaShader = null;
 
             requestLayout();
         }
 
     }
 
+    public boolean isAlphaSliderVisible(){
+        return mShowAlphaPanel;
+    }
+
     public void setSliderTrackerColor(int color){
         mSliderTrackerColor = color;
 
@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crdroid.settings.preferences.colorpicker;
+
+import android.app.WallpaperColors;
+import android.app.WallpaperManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.view.View;
+import android.widget.LinearLayout;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Color suggestions taken from the current system wallpaper for the color pickers.
+ *
+ * The swatches are the WallpaperColors of the wallpaper followed by a quantized
+ * palette of a downsampled copy of it. They are computed once per wallpaper id on a
+ * background thread and kept in memory and in shared preferences, so opening a picker
+ * never decodes the wallpaper. Wallpaper changes, including color changes of a live
+ * wallpaper that keeps its id, start the computation right away instead of waiting for
+ * the next picker.
+ */
+public final class WallpaperSwatches {
+
+    private static final String TAG = "WallpaperSwatches";
+
+    private static final String PREFS_NAME = "wallpaper_swatches";
+    private static final String KEY_WALLPAPER_ID = "wallpaper_id";
+    private static final String KEY_COLORS = "colors";
+
+    public static final int MAX_SWATCHES = 6;
+
+    // Longest edge of the bitmap the palette is computed on
+    private static final int SAMPLE_EDGE = 112;
+    // Bits kept per channel when bucketing pixels
+    private static final int QUANT_BITS = 4;
+    // Minimum squared RGB distance between two swatches
+    private static final int MIN_DISTANCE_SQ = 48 * 48;
+
+    private static WallpaperSwatches sInstance;
+
+    public interface Callback {
+        /**
+         * Called on the main thread once the swatches of a new wallpaper are known.
+         */
+        void onSwatchesLoaded(int[] swatches);
+    }
+
+    private final WallpaperManager mWallpaperManager;
+    private final SharedPreferences mPrefs;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Serial of the latest computation, older ones are skipped or dropped
+    private final AtomicInteger mComputeSerial = new AtomicInteger();
+
+    // Only touched on the main thread
+    private int mWallpaperId = -1;
+    private int[] mSwatches;
+    private int mPendingId = -1;
+    private final List<Callback> mPendingCallbacks = new ArrayList<>();
+
+    /**
+     * Fills a swatch row once the swatches are loaded, until the row is unbound.
+     */
+    private static final class RowCallback implements Callback {
+        final LinearLayout row;
+        final ColorPickerView picker;
+
+        RowCallback(LinearLayout row, ColorPickerView picker) {
+            this.row = row;
+            this.picker = picker;
+        }
+
+        @Override
+        public void onSwatchesLoaded(int[] swatches) {
+            populateRow(row, picker, swatches);
+        }
+    }
+
+    public static synchronized WallpaperSwatches getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WallpaperSwatches(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WallpaperSwatches(Context context) {
+        mWallpaperManager = context.getSystemService(WallpaperManager.class);
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (mWallpaperManager != null) {
+            mWallpaperManager.addOnColorsChangedListener((colors, which) -> {
+                if ((which & WallpaperManager.FLAG_SYSTEM) != 0) {
+                    refresh();
+                }
+            }, mMainHandler);
+        }
+    }
+
+    /**
+     * Returns the swatches of the current wallpaper if they are cached. Otherwise
+     * returns null and computes them, calling back on the main thread when done.
+     */
+    public int[] load(Callback callback) {
+        if (mWallpaperManager == null) {
+            return null;
+        }
+        final int wallpaperId = mWallpaperManager.getWallpaperId(WallpaperManager.FLAG_SYSTEM);
+        if (wallpaperId == mWallpaperId && mSwatches != null) {
+            return mSwatches;
+        }
+        if (mPrefs.getInt(KEY_WALLPAPER_ID, -1) == wallpaperId) {
+            final int[] swatches = decode(mPrefs.getString(KEY_COLORS, null));
+            if (swatches != null) {
+                mWallpaperId = wallpaperId;
+                mSwatches = swatches;
+                return swatches;
+            }
+        }
+        mPendingCallbacks.add(callback);
+        if (mPendingId != wallpaperId) {
+            startCompute(wallpaperId);
+        }
+        return null;
+    }
+
+    /**
+     * Recomputes the swatches after the system wallpaper or its colors changed. A live
+     * wallpaper changes its colors without getting a new id, so the cached swatches are
+     * never reused here.
+     */
+    private void refresh() {
+        startCompute(mWallpaperManager.getWallpaperId(WallpaperManager.FLAG_SYSTEM));
+    }
+
+    private void startCompute(int wallpaperId) {
+        mPendingId = wallpaperId;
+        final int serial = mComputeSerial.incrementAndGet();
+        mExecutor.execute(() -> {
+            if (serial != mComputeSerial.get()) {
+                // Superseded while queued, the newer job notifies
+                return;
+            }
+            int[] swatches = null;
+            try {
+                swatches = compute();
+                mPrefs.edit()
+                        .putInt(KEY_WALLPAPER_ID, wallpaperId)
+                        .putString(KEY_COLORS, encode(swatches))
+                        .apply();
+            } catch (RuntimeException | OutOfMemoryError e) {
+                Log.w(TAG, "Unable to compute wallpaper swatches", e);
+            } finally {
+                // Always report back, or the pending id would block every later load
+                final int[] result = swatches;
+                mMainHandler.post(() -> onComputed(serial, wallpaperId, result));
+            }
+        });
+    }
+
+    private void onComputed(int serial, int wallpaperId, int[] swatches) {
+        if (serial != mComputeSerial.get()) {
+            // The wallpaper or its colors changed again meanwhile, the newer job notifies
+            return;
+        }
+        if (swatches != null) {
+            mWallpaperId = wallpaperId;
+            mSwatches = swatches;
+        }
+        mPendingId = -1;
+        // A failed run is not cached, the next load tries again
+        final int[] delivered = swatches != null ? swatches : new int[0];
+        for (Callback pending : mPendingCallbacks) {
+            pending.onSwatchesLoaded(delivered);
+        }
+        mPendingCallbacks.clear();
+    }
+
+    /**
+     * Fills the row with one panel per swatch, which set the picker color when
+     * pressed. The row stays hidden while there are no swatches. Callers unbind the
+     * row when their dialog goes away, so a pending load does not keep it alive.
+     */
+    public void bindRow(LinearLayout row, ColorPickerView picker) {
+        final int[] swatches = load(new RowCallback(row, picker));
+        populateRow(row, picker, swatches);
+    }
+
+    /**
+     * Drops the pending load of a row bound with bindRow.
+     */
+    public void unbindRow(LinearLayout row) {
+        final Iterator<Callback> it = mPendingCallbacks.iterator();
+        while (it.hasNext()) {
+            final Callback callback = it.next();
+            if (callback instanceof RowCallback && ((RowCallback) callback).row == row) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void populateRow(LinearLayout row, ColorPickerView picker, int[] swatches) {
+        row.removeAllViews();
+        if (swatches == null || swatches.length == 0) {
+            row.setVisibility(View.GONE);
+            return;
+        }
+        final int margin = Math.round(6 * row.getResources().getDisplayMetrics().density);
+        for (int i = 0; i < swatches.length; i++) {
+            final int color = swatches[i];
+            final ColorPickerPanelView panel = new ColorPickerPanelView(row.getContext());
+            final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(0,
+                    LinearLayout.LayoutParams.MATCH_PARENT, 0.5f);
+            if (i < swatches.length - 1) {
+                lp.setMarginEnd(margin);
+            }
+            panel.setColor(color);
+            panel.setOnClickListener(v -> picker.setColor(color, true));
+            row.addView(panel, lp);
+        }
+        row.setVisibility(View.VISIBLE);
+    }
+
+    private int[] compute() {
+        final int[] result = new int[MAX_SWATCHES];
+        int count = 0;
+
+        final WallpaperColors colors =
+                mWallpaperManager.getWallpaperColors(WallpaperManager.FLAG_SYSTEM);
+        if (colors != null) {
+            count = addSwatch(result, count, colors.getPrimaryColor());
+            count = addSwatch(result, count, colors.getSecondaryColor());
+            count = addSwatch(result, count, colors.getTertiaryColor());
+        }
+
+        final Bitmap sample = decodeSample();
+        if (sample != null) {
+            count = addPalette(result, count, sample);
+            sample.recycle();
+        }
+
+        final int[] swatches = new int[count];
+        System.arraycopy(result, 0, swatches, 0, count);
+        return swatches;
+    }
+
+    private static int addSwatch(int[] swatches, int count, Color color) {
+        return color == null ? count : addSwatch(swatches, count, color.toArgb());
+    }
+
+    private static int addSwatch(int[] swatches, int count, int color) {
+        if (count >= swatches.length) {
+            return count;
+        }
+        color |= 0xff000000;
+        for (int i = 0; i < count; i++) {
+            if (distanceSq(swatches[i], color) < MIN_DISTANCE_SQ) {
+                return count;
+            }
+        }
+        swatches[count] = color;
+        return count + 1;
+    }
+
+    /**
+     * Decodes the static wallpaper with the largest power of two sample size that
+     * keeps it above SAMPLE_EDGE. Returns null for live wallpapers.
+     */
+    private Bitmap decodeSample() {
+        try (ParcelFileDescriptor pfd =
+                mWallpaperManager.getWallpaperFile(WallpaperManager.FLAG_SYSTEM)) {
+            if (pfd == null) {
+                return null;
+            }
+            try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, options);
+                final int edge = Math.max(options.outWidth, options.outHeight);
+                if (edge <= 0) {
+                    return null;
+                }
+                int sampleSize = 1;
+                while (edge / (sampleSize * 2) >= SAMPLE_EDGE) {
+                    sampleSize *= 2;
+                }
+                in.getChannel().position(0);
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = sampleSize;
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                return BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null,
+                        options);
+            }
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "Unable to read wallpaper", e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds the averages of the most populated buckets of a uniform RGB quantization.
+     */
+    private static int addPalette(int[] swatches, int count, Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        final int shift = 8 - QUANT_BITS;
+        final int buckets = 1 << (QUANT_BITS * 3);
+        final int[] population = new int[buckets];
+        final long[] sums = new long[buckets * 3];
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) < 0x80) {
+                continue;
+            }
+            final int r = (pixel >> 16) & 0xff;
+            final int g = (pixel >> 8) & 0xff;
+            final int b = pixel & 0xff;
+            final int bucket = ((r >> shift) << (QUANT_BITS * 2))
+                    | ((g >> shift) << QUANT_BITS) | (b >> shift);
+            population[bucket]++;
+            sums[bucket * 3] += r;
+            sums[bucket * 3 + 1] += g;
+            sums[bucket * 3 + 2] += b;
+        }
+
+        while (count < swatches.length) {
+            int best = -1;
+            for (int i = 0; i < buckets; i++) {
+                if (population[i] > 0 && (best < 0 || population[i] > population[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            final int n = population[best];
+            population[best] = 0;
+            count = addSwatch(swatches, count, Color.rgb(
+                    (int) (sums[best * 3] / n),
+                    (int) (sums[best * 3 + 1] / n),
+                    (int) (sums[best * 3 + 2] / n)));
+        }
+        return count;
+    }
+
+    private static int distanceSq(int a, int b) {
+        final int dr = ((a >> 16) & 0xff) - ((b >> 16) & 0xff);
+        final int dg = ((a >> 8) & 0xff) - ((b >> 8) & 0xff);
+        final int db = (a & 0xff) - (b & 0xff);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    private static String encode(int[] swatches) {
+        final StringBuilder builder = new StringBuilder(swatches.length * 9);
+        for (int i = 0; i < swatches.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            ColorMath.appendHex(builder, swatches[i], 8);
+        }
+        return builder.toString();
+    }
+
+    private static int[] decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.isEmpty()) {
+            return new int[0];
+        }
+        final String[] parts = value.split(",");
+        final int[] swatches = new int[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                swatches[i] = ColorMath.parseHex(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return swatches;
+    }
+}
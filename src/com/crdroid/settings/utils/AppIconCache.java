@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crdroid.settings.utils;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.android.settings.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide cache of application icons scaled to list size.
+ *
+ * Icons are kept in a memory LRU sized from the memory class and mirrored to a disk
+ * cache keyed by package, versionCode, density, icon size and icon shape, so a second
+ * visit to any app list never has to go through PackageManager again. Loading always
+ * happens off the main thread. Density and icon size follow configuration changes, and
+ * icons of removed packages are deleted from disk when the removal is reported and, for
+ * removals while the process was gone, by a sweep when the cache is created.
+ */
+public class AppIconCache {
+
+    private static final String TAG = "AppIconCache";
+    private static final String CACHE_DIR = "app_icons";
+    private static final char KEY_SEPARATOR = '@';
+
+    // Fraction of the memory class handed to the memory cache
+    private static final int MEMORY_CACHE_DIVIDER = 16;
+
+    private static AppIconCache sInstance;
+
+    public interface OnIconLoadedListener {
+        void onIconLoaded(String packageName, Drawable icon);
+    }
+
+    private final Resources mResources;
+    private final PackageManager mPm;
+    private final File mCacheDir;
+    // Follow the configuration, read without locking by loads in flight
+    private volatile int mIconSize;
+    private volatile int mDensityDpi;
+    // Hash of the icon mask, overlays changing the icon shape swap it at runtime
+    private volatile String mIconShape;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    // getIcon is called from several executors, misses are resolved one at a time
+    private final Object mLoadLock = new Object();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized AppIconCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppIconCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private AppIconCache(Context context) {
+        mResources = context.getResources();
+        mPm = context.getPackageManager();
+        mCacheDir = new File(context.getCacheDir(), CACHE_DIR);
+
+        ActivityManager am = context.getSystemService(ActivityManager.class);
+        final int cacheSize = am.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVIDER;
+        mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        updateConfiguration();
+
+        context.registerComponentCallbacks(new ComponentCallbacks() {
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                // Overlay and display size changes arrive as configuration changes
+                updateConfiguration();
+            }
+
+            @Override
+            public void onLowMemory() {
+                mMemoryCache.evictAll();
+            }
+        });
+
+        // Lives as long as the process, like the cache itself
+        mMainHandler.post(() -> PackageChangeMonitor.getInstance(context).addListener(
+                new PackageChangeMonitor.Listener() {
+                    @Override
+                    public void onPackageAdded(String packageName) {
+                        // Nothing cached yet
+                    }
+
+                    @Override
+                    public void onPackageRemoved(String packageName) {
+                        mExecutor.execute(() -> removePackage(packageName));
+                    }
+
+                    @Override
+                    public void onPackageChanged(String packageName) {
+                        // Version changes get a new key, stale files go on the next save
+                    }
+                }));
+        mExecutor.execute(this::pruneRemovedPackages);
+    }
+
+    private void updateConfiguration() {
+        final int iconSize = mResources.getDimensionPixelSize(
+                com.android.internal.R.dimen.app_icon_size);
+        final int densityDpi = mResources.getDisplayMetrics().densityDpi;
+        final String shape = Integer.toHexString(mResources.getString(
+                com.android.internal.R.string.config_icon_mask).hashCode());
+        if (iconSize != mIconSize || densityDpi != mDensityDpi || !shape.equals(mIconShape)) {
+            mIconSize = iconSize;
+            mDensityDpi = densityDpi;
+            mIconShape = shape;
+            mMemoryCache.evictAll();
+        }
+    }
+
+    /**
+     * Returns the icon if it is already held in memory, null otherwise. Safe to call on
+     * the main thread.
+     */
+    public Drawable peekIcon(ApplicationInfo info) {
+        Bitmap bitmap = mMemoryCache.get(getKey(info));
+        return bitmap != null ? new BitmapDrawable(mResources, bitmap) : null;
+    }
+
+    /**
+     * Returns the icon, loading it from disk or PackageManager if needed. Blocks, so it
+     * must only be called from a background thread.
+     */
+    public Drawable getIcon(ApplicationInfo info) {
+        final String key = getKey(info);
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            return new BitmapDrawable(mResources, bitmap);
+        }
+        synchronized (mLoadLock) {
+            // Another caller may have finished the same icon while we waited
+            bitmap = mMemoryCache.get(key);
+            if (bitmap == null) {
+                bitmap = loadFromDisk(key);
+                if (bitmap == null) {
+                    bitmap = loadFromPackageManager(info);
+                    if (bitmap == null) {
+                        return null;
+                    }
+                    saveToDisk(info.packageName, key, bitmap);
+                }
+                mMemoryCache.put(key, bitmap);
+            }
+        }
+        return new BitmapDrawable(mResources, bitmap);
+    }
+
+    /**
+     * Delivers the icon to the listener on the main thread. Memory hits are delivered
+     * synchronously.
+     */
+    public void loadIcon(ApplicationInfo info, OnIconLoadedListener listener) {
+        Drawable icon = peekIcon(info);
+        if (icon != null) {
+            listener.onIconLoaded(info.packageName, icon);
+            return;
+        }
+        mExecutor.execute(() -> {
+            final Drawable loaded = getIcon(info);
+            mMainHandler.post(() -> listener.onIconLoaded(info.packageName, loaded));
+        });
+    }
+
+    /**
+     * Binds the icon to a possibly recycled view, ignoring results that arrive after the
+     * view has been rebound to another package.
+     */
+    public void loadIcon(ApplicationInfo info, ImageView view) {
+        view.setTag(R.id.app_icon_cache_package, info.packageName);
+        Drawable icon = peekIcon(info);
+        view.setImageDrawable(icon);
+        if (icon != null) {
+            return;
+        }
+        loadIcon(info, (packageName, loaded) -> {
+            if (packageName.equals(view.getTag(R.id.app_icon_cache_package))) {
+                view.setImageDrawable(loaded);
+            }
+        });
+    }
+
+    private String getKey(ApplicationInfo info) {
+        return info.packageName + KEY_SEPARATOR + info.longVersionCode
+                + KEY_SEPARATOR + mDensityDpi + KEY_SEPARATOR + mIconSize
+                + KEY_SEPARATOR + mIconShape;
+    }
+
+    private Bitmap loadFromPackageManager(ApplicationInfo info) {
+        Drawable drawable = info.loadIcon(mPm);
+        if (drawable == null) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, mIconSize, mIconSize);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    private Bitmap loadFromDisk(String key) {
+        AtomicFile file = new AtomicFile(new File(mCacheDir, key + ".png"));
+        if (!file.exists()) {
+            return null;
+        }
+        return BitmapFactory.decodeFile(file.getBaseFile().getPath());
+    }
+
+    private void saveToDisk(String packageName, String key, Bitmap bitmap) {
+        if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+            return;
+        }
+
+        // Drop icons cached for previous versions of this package
+        deleteFromDisk(packageName);
+
+        // Written aside and renamed, so a reader never decodes a half written file
+        final AtomicFile file = new AtomicFile(new File(mCacheDir, key + ".png"));
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to cache icon for " + packageName, e);
+            file.failWrite(out);
+        }
+    }
+
+    private void deleteFromDisk(String packageName) {
+        final String prefix = packageName + KEY_SEPARATOR;
+        File[] stale = mCacheDir.listFiles((dir, name) -> name.startsWith(prefix));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+    }
+
+    private void removePackage(String packageName) {
+        final String prefix = packageName + KEY_SEPARATOR;
+        for (String key : mMemoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mMemoryCache.remove(key);
+            }
+        }
+        synchronized (mLoadLock) {
+            deleteFromDisk(packageName);
+        }
+    }
+
+    /**
+     * Deletes the icons of packages that were removed while no listener was registered.
+     */
+    private void pruneRemovedPackages() {
+        final String[] names = mCacheDir.list();
+        if (names == null) {
+            return;
+        }
+        final Set<String> packages = new HashSet<>();
+        for (String name : names) {
+            final int end = name.indexOf(KEY_SEPARATOR);
+            if (end > 0) {
+                packages.add(name.substring(0, end));
+            }
+        }
+        for (String packageName : packages) {
+            try {
+                mPm.getApplicationInfo(packageName, PackageManager.MATCH_DISABLED_COMPONENTS);
+            } catch (PackageManager.NameNotFoundException e) {
+                removePackage(packageName);
+            }
+        }
+    }
+}
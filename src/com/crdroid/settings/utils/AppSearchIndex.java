@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crdroid.settings.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Substring search over app labels and package names for the app pickers.
+ *
+ * Every item is indexed by the trigrams of its normalized label and package name.
+ * A query that extends the previous one only re-checks the previous matches, any
+ * other query of three or more characters starts from the intersection of its
+ * trigram postings. Not thread safe, callers keep it on one thread.
+ */
+public class AppSearchIndex<T> {
+
+    private static final int GRAM = 3;
+
+    private static class Entry {
+        final int slot;
+        final String text;
+
+        Entry(int slot, String text) {
+            this.slot = slot;
+            this.text = text;
+        }
+    }
+
+    private final Map<T, Entry> mEntries = new HashMap<>();
+    private final Map<Long, BitSet> mPostings = new HashMap<>();
+    private final BitSet mFreeSlots = new BitSet();
+    private int mNextSlot;
+
+    private String mLastQuery;
+    private List<T> mLastResult;
+
+    public void add(T item, CharSequence label, String packageName) {
+        remove(item);
+
+        int slot = mFreeSlots.nextSetBit(0);
+        if (slot >= 0) {
+            mFreeSlots.clear(slot);
+        } else {
+            slot = mNextSlot++;
+        }
+
+        // Separator keeps matches from spanning label and package name
+        final String text = normalize(label) + '\n' + normalize(packageName);
+        mEntries.put(item, new Entry(slot, text));
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            final long gram = packGram(text, i);
+            BitSet posting = mPostings.get(gram);
+            if (posting == null) {
+                posting = new BitSet();
+                mPostings.put(gram, posting);
+            }
+            posting.set(slot);
+        }
+        invalidate();
+    }
+
+    public void remove(T item) {
+        final Entry entry = mEntries.remove(item);
+        if (entry == null) {
+            return;
+        }
+        final String text = entry.text;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            final long gram = packGram(text, i);
+            BitSet posting = mPostings.get(gram);
+            if (posting != null) {
+                posting.clear(entry.slot);
+                if (posting.isEmpty()) {
+                    mPostings.remove(gram);
+                }
+            }
+        }
+        mFreeSlots.set(entry.slot);
+        invalidate();
+    }
+
+    public void clear() {
+        mEntries.clear();
+        mPostings.clear();
+        mFreeSlots.clear();
+        mNextSlot = 0;
+        invalidate();
+    }
+
+    /**
+     * Returns the items of {@code items} matching the query, in the same order.
+     * {@code items} must be the same list between calls for narrowing to apply.
+     */
+    public List<T> filter(String query, List<T> items) {
+        final String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            invalidate();
+            return items;
+        }
+
+        List<T> candidates = items;
+        if (mLastQuery != null && normalized.startsWith(mLastQuery)) {
+            candidates = mLastResult;
+        }
+
+        final BitSet allowed = normalized.length() >= GRAM && candidates == items
+                ? intersectPostings(normalized) : null;
+        final List<T> result = new ArrayList<>();
+        if (allowed == null || !allowed.isEmpty()) {
+            for (T item : candidates) {
+                final Entry entry = mEntries.get(item);
+                if (entry == null || (allowed != null && !allowed.get(entry.slot))) {
+                    continue;
+                }
+                if (entry.text.contains(normalized)) {
+                    result.add(item);
+                }
+            }
+        }
+
+        mLastQuery = normalized;
+        mLastResult = result;
+        return result;
+    }
+
+    /**
+     * Forgets the previous result, so the next query starts from the full list.
+     */
+    public void invalidate() {
+        mLastQuery = null;
+        mLastResult = null;
+    }
+
+    private BitSet intersectPostings(String query) {
+        BitSet result = null;
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            final BitSet posting = mPostings.get(packGram(query, i));
+            if (posting == null) {
+                return new BitSet();
+            }
+            if (result == null) {
+                result = (BitSet) posting.clone();
+            } else {
+                result.and(posting);
+            }
+        }
+        return result;
+    }
+
+    private static long packGram(String text, int offset) {
+        return ((long) text.charAt(offset) << 32)
+                | ((long) text.charAt(offset + 1) << 16)
+                | text.charAt(offset + 2);
+    }
+
+    /**
+     * Lower cases the text and strips accents, so accented labels match plain ASCII queries.
+     */
+    public static String normalize(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return "";
+        }
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        final StringBuilder builder = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            final char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            builder.append(Character.toLowerCase(c));
+        }
+        return builder.toString().trim();
+    }
+}
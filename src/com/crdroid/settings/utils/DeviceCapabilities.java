@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crdroid.settings.utils;
+
+import static org.lineageos.internal.util.DeviceKeysConstants.*;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.view.Display;
+
+import com.crdroid.settings.fragments.ui.doze.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Snapshot of the hardware capabilities the settings screens branch on.
+ *
+ * Probing some of them is expensive: flashlight support walks every camera and UDFPS
+ * asks the fingerprint service. The snapshot is computed once per build fingerprint and
+ * persisted, so later processes only read a small file. The first probe after an update
+ * runs from DozeReceiver on boot, off the main thread; a screen opened before that
+ * finishes probes synchronously in get(). A probe that fails, e.g. because the camera
+ * service is not up yet during boot, is neither persisted nor kept, so the next get()
+ * probes again.
+ *
+ * Values that overlays can change at runtime are not persisted: the cutout shape is read
+ * live and the doze proximity check, which loads a SystemUI package context, is cached
+ * for the lifetime of the process only.
+ */
+public class DeviceCapabilities {
+
+    private static final String TAG = "DeviceCapabilities";
+    private static final String FILE_NAME = "device_capabilities";
+
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_DEVICE_KEYS = "device_keys";
+    private static final String KEY_WAKE_KEYS = "wake_keys";
+    private static final String KEY_POWER_KEY = "power_key";
+    private static final String KEY_BUTTON_BACKLIGHT = "button_backlight";
+    private static final String KEY_KEYBOARD_BACKLIGHT = "keyboard_backlight";
+    private static final String KEY_FLASHLIGHT = "flashlight";
+    private static final String KEY_UDFPS = "udfps";
+    private static final String KEY_DOZE_TILT = "doze_tilt";
+    private static final String KEY_DOZE_PICKUP = "doze_pickup";
+
+    private static DeviceCapabilities sInstance;
+
+    private final int mDeviceKeys;
+    private final int mWakeKeys;
+    private final boolean mHasPowerKey;
+    private final boolean mHasButtonBacklight;
+    private final boolean mHasKeyboardBacklight;
+    private final boolean mHasFlashLight;
+    private final boolean mHasUdfps;
+    private final boolean mHasDozeTilt;
+    private final boolean mHasDozePickup;
+    private final Context mContext;
+    private final boolean mComplete;
+    private Boolean mHasDozeProximity;
+
+    public static synchronized DeviceCapabilities get(Context context) {
+        if (sInstance == null) {
+            final DeviceCapabilities capabilities = load(context.getApplicationContext());
+            if (!capabilities.mComplete) {
+                return capabilities;
+            }
+            sInstance = capabilities;
+        }
+        return sInstance;
+    }
+
+    private DeviceCapabilities(Context context, Properties props, boolean complete) {
+        mContext = context;
+        mComplete = complete;
+        mDeviceKeys = Integer.parseInt(props.getProperty(KEY_DEVICE_KEYS));
+        mWakeKeys = Integer.parseInt(props.getProperty(KEY_WAKE_KEYS));
+        mHasPowerKey = getBoolean(props, KEY_POWER_KEY);
+        mHasButtonBacklight = getBoolean(props, KEY_BUTTON_BACKLIGHT);
+        mHasKeyboardBacklight = getBoolean(props, KEY_KEYBOARD_BACKLIGHT);
+        mHasFlashLight = getBoolean(props, KEY_FLASHLIGHT);
+        mHasUdfps = getBoolean(props, KEY_UDFPS);
+        mHasDozeTilt = getBoolean(props, KEY_DOZE_TILT);
+        mHasDozePickup = getBoolean(props, KEY_DOZE_PICKUP);
+    }
+
+    private static DeviceCapabilities load(Context context) {
+        final AtomicFile file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        final Properties props = new Properties();
+        try (FileInputStream in = file.openRead()) {
+            props.load(in);
+            if (Build.FINGERPRINT.equals(props.getProperty(KEY_FINGERPRINT))) {
+                return new DeviceCapabilities(context, props, true);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Missing or unreadable, probe again below
+        }
+
+        final Properties probed = new Properties();
+        if (!probe(context, probed)) {
+            return new DeviceCapabilities(context, probed, false);
+        }
+
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            probed.store(out, null);
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to persist device capabilities", e);
+            file.failWrite(out);
+        }
+        return new DeviceCapabilities(context, probed, true);
+    }
+
+    /**
+     * Fills in every key and returns whether all of them could be probed. Keys that
+     * failed hold the value the plain DeviceUtils check falls back to.
+     */
+    private static boolean probe(Context context, Properties props) {
+        boolean complete = true;
+        boolean flashLight = false;
+        try {
+            flashLight = DeviceUtils.probeFlashLight(context);
+        } catch (CameraAccessException | RuntimeException | AssertionError e) {
+            Log.w(TAG, "Failed to probe the flashlight", e);
+            complete = false;
+        }
+
+        props.setProperty(KEY_FINGERPRINT, Build.FINGERPRINT);
+        props.setProperty(KEY_DEVICE_KEYS, Integer.toString(DeviceUtils.getDeviceKeys(context)));
+        props.setProperty(KEY_WAKE_KEYS, Integer.toString(DeviceUtils.getDeviceWakeKeys(context)));
+        putBoolean(props, KEY_POWER_KEY, DeviceUtils.hasPowerKey());
+        putBoolean(props, KEY_BUTTON_BACKLIGHT, DeviceUtils.hasButtonBacklightSupport(context));
+        putBoolean(props, KEY_KEYBOARD_BACKLIGHT,
+                DeviceUtils.hasKeyboardBacklightSupport(context));
+        putBoolean(props, KEY_FLASHLIGHT, flashLight);
+        putBoolean(props, KEY_UDFPS, DeviceUtils.hasUDFPS(context));
+        putBoolean(props, KEY_DOZE_TILT, Utils.getTiltSensor(context));
+        putBoolean(props, KEY_DOZE_PICKUP, Utils.getPickupSensor(context));
+        return complete;
+    }
+
+    private static boolean getBoolean(Properties props, String key) {
+        final String value = props.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private static void putBoolean(Properties props, String key, boolean value) {
+        props.setProperty(key, Boolean.toString(value));
+    }
+
+    public boolean hasPowerKey() {
+        return mHasPowerKey;
+    }
+
+    public boolean hasHomeKey() {
+        return (mDeviceKeys & KEY_MASK_HOME) != 0;
+    }
+
+    public boolean hasBackKey() {
+        return (mDeviceKeys & KEY_MASK_BACK) != 0;
+    }
+
+    public boolean hasMenuKey() {
+        return (mDeviceKeys & KEY_MASK_MENU) != 0;
+    }
+
+    public boolean hasAssistKey() {
+        return (mDeviceKeys & KEY_MASK_ASSIST) != 0;
+    }
+
+    public boolean hasAppSwitchKey() {
+        return (mDeviceKeys & KEY_MASK_APP_SWITCH) != 0;
+    }
+
+    public boolean hasCameraKey() {
+        return (mDeviceKeys & KEY_MASK_CAMERA) != 0;
+    }
+
+    public boolean hasVolumeKeys() {
+        return (mDeviceKeys & KEY_MASK_VOLUME) != 0;
+    }
+
+    public boolean canWakeUsingHomeKey() {
+        return (mWakeKeys & KEY_MASK_HOME) != 0;
+    }
+
+    public boolean canWakeUsingBackKey() {
+        return (mWakeKeys & KEY_MASK_BACK) != 0;
+    }
+
+    public boolean canWakeUsingMenuKey() {
+        return (mWakeKeys & KEY_MASK_MENU) != 0;
+    }
+
+    public boolean canWakeUsingAssistKey() {
+        return (mWakeKeys & KEY_MASK_ASSIST) != 0;
+    }
+
+    public boolean canWakeUsingAppSwitchKey() {
+        return (mWakeKeys & KEY_MASK_APP_SWITCH) != 0;
+    }
+
+    public boolean canWakeUsingCameraKey() {
+        return (mWakeKeys & KEY_MASK_CAMERA) != 0;
+    }
+
+    public boolean canWakeUsingVolumeKeys() {
+        return (mWakeKeys & KEY_MASK_VOLUME) != 0;
+    }
+
+    public boolean hasButtonBacklightSupport() {
+        return mHasButtonBacklight;
+    }
+
+    public boolean hasKeyboardBacklightSupport() {
+        return mHasKeyboardBacklight;
+    }
+
+    public boolean deviceSupportsFlashLight() {
+        return mHasFlashLight;
+    }
+
+    public boolean hasUDFPS() {
+        return mHasUdfps;
+    }
+
+    public boolean hasCenteredCutout() {
+        // The application context has no display of its own
+        final Display display = mContext.getSystemService(DisplayManager.class)
+                .getDisplay(Display.DEFAULT_DISPLAY);
+        return DeviceUtils.hasCenteredCutout(mContext.createDisplayContext(display));
+    }
+
+    public boolean hasDozeTiltSensor() {
+        return mHasDozeTilt;
+    }
+
+    public boolean hasDozePickupSensor() {
+        return mHasDozePickup;
+    }
+
+    public synchronized boolean hasDozeProximitySensor() {
+        if (mHasDozeProximity == null) {
+            mHasDozeProximity = Utils.getProximitySensor(mContext);
+        }
+        return mHasDozeProximity;
+    }
+}
@@ -258,26 +258,32 @@ public class DeviceUtils {
     }
 
     public static boolean deviceSupportsFlashLight(Context context) {
-        CameraManager cameraManager = context.getSystemService(CameraManager.class);
         try {
-            String[] ids = cameraManager.getCameraIdList();
-            for (String id : ids) {
-                CameraCharacteristics c = cameraManager.getCameraCharacteristics(id);
-                Boolean flashAvailable = c.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
-                Integer lensFacing = c.get(CameraCharacteristics.LENS_FACING);
-                if (flashAvailable != null
-                        && flashAvailable
-                        && lensFacing != null
-                        && lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
-                    return true;
-                }
-            }
+            return probeFlashLight(context);
         } catch (ArrayIndexOutOfBoundsException | CameraAccessException | AssertionError e) {
             // Ignore
         }
         return false;
     }
 
+    /* same as deviceSupportsFlashLight, but fails if the cameras can not be queried. */
+    public static boolean probeFlashLight(Context context) throws CameraAccessException {
+        CameraManager cameraManager = context.getSystemService(CameraManager.class);
+        String[] ids = cameraManager.getCameraIdList();
+        for (String id : ids) {
+            CameraCharacteristics c = cameraManager.getCameraCharacteristics(id);
+            Boolean flashAvailable = c.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+            Integer lensFacing = c.get(CameraCharacteristics.LENS_FACING);
+            if (flashAvailable != null
+                    && flashAvailable
+                    && lensFacing != null
+                    && lensFacing == CameraCharacteristics.LENS_FACING_BACK) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static boolean isSwipeUpEnabled(Context context) {
         if (isEdgeToEdgeEnabled(context)) {
             return false;
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.crdroid.settings.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide feed of single package changes, so app lists can patch themselves
+ * instead of reloading everything. Listeners are called on the main thread.
+ */
+public class PackageChangeMonitor {
+
+    private static PackageChangeMonitor sInstance;
+
+    public interface Listener {
+        void onPackageAdded(String packageName);
+        void onPackageRemoved(String packageName);
+        void onPackageChanged(String packageName);
+    }
+
+    private final Context mContext;
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final Uri data = intent.getData();
+            if (data == null) {
+                return;
+            }
+            final String packageName = data.getSchemeSpecificPart();
+            final boolean replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+
+            for (Listener listener : new ArrayList<>(mListeners)) {
+                switch (intent.getAction()) {
+                    case Intent.ACTION_PACKAGE_ADDED:
+                        if (replacing) {
+                            listener.onPackageChanged(packageName);
+                        } else {
+                            listener.onPackageAdded(packageName);
+                        }
+                        break;
+                    case Intent.ACTION_PACKAGE_REMOVED:
+                        // Updates are reported once by the matching ADDED broadcast
+                        if (!replacing) {
+                            listener.onPackageRemoved(packageName);
+                        }
+                        break;
+                    case Intent.ACTION_PACKAGE_CHANGED:
+                        listener.onPackageChanged(packageName);
+                        break;
+                }
+            }
+        }
+    };
+
+    public static synchronized PackageChangeMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PackageChangeMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PackageChangeMonitor(Context context) {
+        mContext = context;
+    }
+
+    public void addListener(Listener listener) {
+        if (mListeners.contains(listener)) {
+            return;
+        }
+        mListeners.add(listener);
+        if (mListeners.size() == 1) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            filter.addDataScheme("package");
+            mContext.registerReceiver(mReceiver, filter);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty()) {
+            mContext.unregisterReceiver(mReceiver);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+#
+# Copyright (C) 2024 crDroid Android Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+LOCAL_PATH := $(call my-dir)
+
+# JVM unit tests for the plain Java parts of the app, compiled together with the
+# sources under test. Run them with atest CrDroidSettingsHostTests or run-host-tests.sh.
+include $(CLEAR_VARS)
+
+APP_SRC_DIR := ../src/com/crdroid/settings
+
+LOCAL_MODULE := CrDroidSettingsHostTests
+LOCAL_MODULE_TAGS := tests
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, src) \
+    $(APP_SRC_DIR)/fragments/notifications/notificationlight/CustomLightsCodec.java \
+    $(APP_SRC_DIR)/fragments/ui/doze/AODScheduleEngine.java \
+    $(APP_SRC_DIR)/fragments/ui/doze/DozeSensorPolicy.java \
+    $(APP_SRC_DIR)/fragments/ui/doze/PickupDetector.java \
+    $(APP_SRC_DIR)/fragments/ui/doze/SolarCalculator.java \
+    $(APP_SRC_DIR)/preferences/colorpicker/ColorMath.java \
+    $(APP_SRC_DIR)/utils/AppSearchIndex.java
+LOCAL_STATIC_JAVA_LIBRARIES := junit
+LOCAL_COMPATIBILITY_SUITE := general-tests
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
+include $(call all-makefiles-under,$(LOCAL_PATH))
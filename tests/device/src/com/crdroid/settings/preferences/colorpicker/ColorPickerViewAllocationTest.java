@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.preferences.colorpicker;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Drives drags through a laid out ColorPickerView and checks that the touch and
+ * draw path of a frame allocates nothing once the view is warmed up.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ColorPickerViewAllocationTest {
+
+    private static final int SIZE_PX = 600;
+    private static final int FRAMES = 200;
+    private static final int WARM_UP_ROUNDS = 3;
+
+    private ColorPickerView mView;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private MotionEvent mEvent;
+    private float mDensity;
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            final Context context = InstrumentationRegistry.getTargetContext();
+            mDensity = context.getResources().getDisplayMetrics().density;
+            mView = new ColorPickerView(context);
+            mView.setAlphaSliderVisible(true);
+            mView.setOnColorChangedListener(color -> { });
+            mView.setOnColorCommitListener(color -> { }, 100);
+            mView.measure(
+                    View.MeasureSpec.makeMeasureSpec(SIZE_PX, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(SIZE_PX, View.MeasureSpec.EXACTLY));
+            mView.layout(0, 0, SIZE_PX, SIZE_PX);
+            mBitmap = Bitmap.createBitmap(SIZE_PX, SIZE_PX, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
+            final long now = SystemClock.uptimeMillis();
+            mEvent = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, 0, 0, 0);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            mEvent.recycle();
+            mBitmap.recycle();
+        });
+    }
+
+    @Test
+    public void satValDragDoesNotAllocate() {
+        // Diagonal through the saturation/value panel on the left
+        assertDragDoesNotAllocate(SIZE_PX * 0.1f, SIZE_PX * 0.1f, SIZE_PX * 0.6f, SIZE_PX * 0.6f);
+    }
+
+    @Test
+    public void hueDragDoesNotAllocate() {
+        // Top to bottom along the hue panel on the right, rebuilding the
+        // saturation/value bitmap for each hue bucket it crosses
+        final float x = SIZE_PX - 18 * mDensity;
+        assertDragDoesNotAllocate(x, SIZE_PX * 0.05f, x, SIZE_PX * 0.7f);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void assertDragDoesNotAllocate(float fromX, float fromY, float toX, float toY) {
+        final int[] allocations = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            // Builds the caches and lets the runtime settle
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                drag(fromX, fromY, toX, toY);
+            }
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            drag(fromX, fromY, toX, toY);
+            Debug.stopAllocCounting();
+            allocations[0] = Debug.getThreadAllocCount();
+        });
+        assertEquals("Objects allocated in " + FRAMES + " drag frames", 0, allocations[0]);
+    }
+
+    private void drag(float fromX, float fromY, float toX, float toY) {
+        mEvent.setAction(MotionEvent.ACTION_DOWN);
+        mEvent.setLocation(fromX, fromY);
+        mView.onTouchEvent(mEvent);
+        mView.draw(mCanvas);
+
+        mEvent.setAction(MotionEvent.ACTION_MOVE);
+        for (int i = 1; i <= FRAMES; i++) {
+            final float fraction = i / (float) FRAMES;
+            mEvent.setLocation(fromX + (toX - fromX) * fraction,
+                    fromY + (toY - fromY) * fraction);
+            mView.onTouchEvent(mEvent);
+            mView.draw(mCanvas);
+        }
+
+        mEvent.setAction(MotionEvent.ACTION_UP);
+        mView.onTouchEvent(mEvent);
+    }
+}
@@ -0,0 +1,48 @@
+#!/bin/bash
+#
+# Copyright (C) 2024 crDroid Android Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Builds the JVM unit tests with the host JDK and runs them.
+# Usage: JUNIT_CLASSPATH=junit-4.13.2.jar:hamcrest-core-1.3.jar run-host-tests.sh
+
+set -e
+
+if [ -z "$JUNIT_CLASSPATH" ]; then
+    echo "JUNIT_CLASSPATH must point to the JUnit 4 and Hamcrest jars" >&2
+    exit 1
+fi
+
+TESTS_DIR=$(cd "$(dirname "$0")" && pwd)
+APP_SRC_DIR=$TESTS_DIR/../src/com/crdroid/settings
+OUT_DIR=$(mktemp -d)
+trap 'rm -rf "$OUT_DIR"' EXIT
+
+TEST_SOURCES=$(find "$TESTS_DIR/src" -name '*Test.java')
+
+javac -d "$OUT_DIR" -cp "$JUNIT_CLASSPATH" \
+    $TEST_SOURCES \
+    "$APP_SRC_DIR"/fragments/notifications/notificationlight/CustomLightsCodec.java \
+    "$APP_SRC_DIR"/fragments/ui/doze/AODScheduleEngine.java \
+    "$APP_SRC_DIR"/fragments/ui/doze/DozeSensorPolicy.java \
+    "$APP_SRC_DIR"/fragments/ui/doze/PickupDetector.java \
+    "$APP_SRC_DIR"/fragments/ui/doze/SolarCalculator.java \
+    "$APP_SRC_DIR"/preferences/colorpicker/ColorMath.java \
+    "$APP_SRC_DIR"/utils/AppSearchIndex.java
+
+TEST_CLASSES=$(cd "$TESTS_DIR/src" && find . -name '*Test.java' \
+    | sed -e 's#^\./##' -e 's#\.java$##' -e 's#/#.#g')
+
+java -cp "$OUT_DIR:$JUNIT_CLASSPATH" org.junit.runner.JUnitCore $TEST_CLASSES
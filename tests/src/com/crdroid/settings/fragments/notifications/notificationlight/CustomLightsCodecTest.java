@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.notifications.notificationlight;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks CustomLightsCodec against the String.split based parser it replaced.
+ */
+public class CustomLightsCodecTest {
+
+    @Test
+    public void encodedEntriesDecodeToTheSameValues() {
+        final StringBuilder builder = new StringBuilder();
+        CustomLightsCodec.encode(builder, "com.example.mail", 0xff00ff00, 500, 1000);
+        builder.append(CustomLightsCodec.ENTRY_SEPARATOR);
+        CustomLightsCodec.encode(builder, "org.example.chat", -1, 0, Integer.MAX_VALUE);
+        builder.append(CustomLightsCodec.ENTRY_SEPARATOR);
+        CustomLightsCodec.encode(builder, "net.example.min", Integer.MIN_VALUE, 1, 2);
+
+        assertEquals("com.example.mail=-16711936;500;1000|org.example.chat=-1;0;2147483647"
+                + "|net.example.min=-2147483648;1;2", builder.toString());
+        assertEquals(Arrays.asList(
+                "com.example.mail=-16711936;500;1000",
+                "org.example.chat=-1;0;2147483647",
+                "net.example.min=-2147483648;1;2"), decode(builder.toString()));
+    }
+
+    @Test
+    public void emptyValuesDecodeToNothing() {
+        assertEquals(Collections.emptyList(), decode(null));
+        assertEquals(Collections.emptyList(), decode(""));
+        assertEquals(Collections.emptyList(), decode("|"));
+        assertEquals(Collections.emptyList(), decode("|||"));
+    }
+
+    @Test
+    public void emptyEntriesAndTrailingSeparatorsAreSkipped() {
+        assertEquals(Arrays.asList("a=1;2;3", "b=4;5;6"), decode("|a=1;2;3||b=4;5;6|"));
+        assertParity("|a=1;2;3||b=4;5;6|");
+        assertParity("a=1;2;3|");
+        assertParity("a=1;2;3;|b=4;5;6");
+    }
+
+    @Test
+    public void malformedEntriesAreSkipped() {
+        final String[] malformed = {
+            // Missing fields
+            "a", "a=", "a=1", "a=1;2", "a=1;2;", "a=;2;3", "a=1;;3",
+            // Extra fields
+            "a=1;2;3;4", "a=b=1;2;3", "a==1;2;3",
+            // Bad ints
+            "a=x;2;3", "a=1;2;3x", "a=1.5;2;3", "a=0x10;2;3", "a=-;2;3", "a=+;2;3",
+            "a= 1;2;3", "a=1;2;2147483648", "a=-2147483649;2;3", "a=99999999999999999999;2;3",
+        };
+        for (String entry : malformed) {
+            assertEquals(entry, Collections.emptyList(), decode(entry));
+            assertEquals(entry, Arrays.asList("ok=1;2;3"), decode(entry + "|ok=1;2;3"));
+            assertParity(entry);
+        }
+    }
+
+    @Test
+    public void signsAndEmptyNamesMatchSplitParser() {
+        assertEquals(Arrays.asList("a=5;-2;0"), decode("a=+5;-2;-0"));
+        assertParity("a=+5;-2;-0");
+        assertEquals(Arrays.asList("=1;2;3"), decode("=1;2;3"));
+        assertParity("=1;2;3");
+        // Integer.parseInt takes any Unicode digit
+        assertParity("a=\u0661\u0662;2;3");
+    }
+
+    @Test
+    public void randomValuesMatchSplitParser() {
+        final char[] alphabet = "ab.=;|-+019 x\u0663".toCharArray();
+        final Random random = new Random(32);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.setLength(0);
+            final int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                builder.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            assertParity(builder.toString());
+        }
+    }
+
+    private static void assertParity(String value) {
+        assertEquals(value, splitDecode(value), decode(value));
+    }
+
+    private static List<String> decode(String value) {
+        final List<String> entries = new ArrayList<>();
+        CustomLightsCodec.decode(value, (name, color, timeOn, timeOff) ->
+                entries.add(name + "=" + color + ";" + timeOn + ";" + timeOff));
+        return entries;
+    }
+
+    /**
+     * The parser NotificationLightSettings used before CustomLightsCodec, with
+     * TextUtils.split inlined.
+     */
+    private static List<String> splitDecode(String value) {
+        final List<String> entries = new ArrayList<>();
+        if (value == null || value.isEmpty()) {
+            return entries;
+        }
+        for (String item : value.split("\\|")) {
+            if (item.isEmpty()) {
+                continue;
+            }
+            final String[] app = item.split("=", -1);
+            if (app.length != 2) {
+                continue;
+            }
+            final String[] values = app[1].split(";", -1);
+            if (values.length != 3) {
+                continue;
+            }
+            try {
+                entries.add(app[0] + "=" + Integer.parseInt(values[0]) + ";"
+                        + Integer.parseInt(values[1]) + ";" + Integer.parseInt(values[2]));
+            } catch (NumberFormatException e) {
+                // Skipped, like the old parser did
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import static com.crdroid.settings.fragments.ui.doze.AODScheduleEngine.MODE_DISABLED;
+import static com.crdroid.settings.fragments.ui.doze.AODScheduleEngine.MODE_MIXED_SUNRISE;
+import static com.crdroid.settings.fragments.ui.doze.AODScheduleEngine.MODE_MIXED_SUNSET;
+import static com.crdroid.settings.fragments.ui.doze.AODScheduleEngine.MODE_NIGHT;
+import static com.crdroid.settings.fragments.ui.doze.AODScheduleEngine.MODE_TIME;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AODScheduleEngineTest {
+
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+    private static final double BERLIN_LAT = 52.52;
+    private static final double BERLIN_LON = 13.405;
+
+    private static final ZoneId OSLO = ZoneId.of("Europe/Oslo");
+    private static final double TROMSO_LAT = 69.65;
+    private static final double TROMSO_LON = 18.96;
+
+    private static Instant at(ZoneId zone, int year, int month, int day, int hour,
+            int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, zone).toInstant();
+    }
+
+    private static AODScheduleEngine berlin(int mode, String times) {
+        return new AODScheduleEngine(mode, times, BERLIN_LAT, BERLIN_LON);
+    }
+
+    private static void assertTransition(List<AODScheduleEngine.Transition> transitions,
+            int index, Instant instant, boolean on) {
+        assertEquals(instant, transitions.get(index).instant);
+        assertEquals(on, transitions.get(index).on);
+    }
+
+    @Test
+    public void disabledNeverChanges() {
+        final AODScheduleEngine engine = berlin(MODE_DISABLED, "20:00,07:00");
+        final Instant noon = at(BERLIN, 2024, 6, 1, 12, 0);
+        assertTrue(engine.nextTransitions(noon, BERLIN, 4).isEmpty());
+        assertFalse(engine.isActive(at(BERLIN, 2024, 6, 1, 23, 0), BERLIN));
+    }
+
+    @Test
+    public void timeModeRunsOvernight() {
+        final AODScheduleEngine engine = berlin(MODE_TIME, "22:00,06:30");
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 6, 1, 12, 0), BERLIN, 4);
+        assertEquals(4, transitions.size());
+        assertTransition(transitions, 0, at(BERLIN, 2024, 6, 1, 22, 0), true);
+        assertTransition(transitions, 1, at(BERLIN, 2024, 6, 2, 6, 30), false);
+        assertTransition(transitions, 2, at(BERLIN, 2024, 6, 2, 22, 0), true);
+        assertTransition(transitions, 3, at(BERLIN, 2024, 6, 3, 6, 30), false);
+
+        assertTrue(engine.isActive(at(BERLIN, 2024, 6, 1, 23, 0), BERLIN));
+        assertTrue(engine.isActive(at(BERLIN, 2024, 6, 2, 3, 0), BERLIN));
+        assertFalse(engine.isActive(at(BERLIN, 2024, 6, 2, 6, 30), BERLIN));
+        assertFalse(engine.isActive(at(BERLIN, 2024, 6, 2, 12, 0), BERLIN));
+    }
+
+    @Test
+    public void timeModeWithinOneDay() {
+        final AODScheduleEngine engine = berlin(MODE_TIME, "08:00,17:00");
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 6, 1, 12, 0), BERLIN, 2);
+        // Already inside the window, so it closes first
+        assertTransition(transitions, 0, at(BERLIN, 2024, 6, 1, 17, 0), false);
+        assertTransition(transitions, 1, at(BERLIN, 2024, 6, 2, 8, 0), true);
+        assertTrue(engine.isActive(at(BERLIN, 2024, 6, 1, 12, 0), BERLIN));
+    }
+
+    @Test
+    public void transitionsAreStrictlyAfterFrom() {
+        final AODScheduleEngine engine = berlin(MODE_TIME, "22:00,06:30");
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 6, 1, 22, 0), BERLIN, 1);
+        assertTransition(transitions, 0, at(BERLIN, 2024, 6, 2, 6, 30), false);
+    }
+
+    @Test
+    public void nightModeFollowsTheSun() {
+        final AODScheduleEngine engine = berlin(MODE_NIGHT, null);
+        final LocalDate day = LocalDate.of(2024, 6, 21);
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 6, 21, 12, 0), BERLIN, 2);
+        assertTransition(transitions, 0,
+                SolarCalculator.sunset(day, BERLIN_LAT, BERLIN_LON), true);
+        assertTransition(transitions, 1,
+                SolarCalculator.sunrise(day.plusDays(1), BERLIN_LAT, BERLIN_LON), false);
+
+        // Midsummer in Berlin: sunset after 21:00, sunrise before 5:00
+        final LocalTime sunset = transitions.get(0).instant.atZone(BERLIN).toLocalTime();
+        final LocalTime sunrise = transitions.get(1).instant.atZone(BERLIN).toLocalTime();
+        assertTrue(sunset.isAfter(LocalTime.of(21, 0)));
+        assertTrue(sunrise.isBefore(LocalTime.of(5, 0)));
+        assertTrue(engine.isActive(at(BERLIN, 2024, 6, 22, 0, 0), BERLIN));
+        assertFalse(engine.isActive(at(BERLIN, 2024, 6, 21, 20, 0), BERLIN));
+    }
+
+    @Test
+    public void mixedSunsetEndsAtCustomTime() {
+        final AODScheduleEngine engine = berlin(MODE_MIXED_SUNSET, "20:00,01:15");
+        final LocalDate day = LocalDate.of(2024, 6, 21);
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 6, 21, 12, 0), BERLIN, 2);
+        assertTransition(transitions, 0,
+                SolarCalculator.sunset(day, BERLIN_LAT, BERLIN_LON), true);
+        assertTransition(transitions, 1, at(BERLIN, 2024, 6, 22, 1, 15), false);
+    }
+
+    @Test
+    public void mixedSunriseStartsAtCustomTime() {
+        final AODScheduleEngine engine = berlin(MODE_MIXED_SUNRISE, "23:30,07:00");
+        final LocalDate day = LocalDate.of(2024, 6, 22);
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 6, 21, 12, 0), BERLIN, 2);
+        assertTransition(transitions, 0, at(BERLIN, 2024, 6, 21, 23, 30), true);
+        assertTransition(transitions, 1,
+                SolarCalculator.sunrise(day, BERLIN_LAT, BERLIN_LON), false);
+    }
+
+    @Test
+    public void springForwardShortensTheNight() {
+        // Clocks jump from 02:00 to 03:00 on 2024-03-31 in Berlin
+        final AODScheduleEngine engine = berlin(MODE_TIME, "20:00,07:00");
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 3, 30, 12, 0), BERLIN, 2);
+        assertTransition(transitions, 0, at(BERLIN, 2024, 3, 30, 20, 0), true);
+        assertTransition(transitions, 1, at(BERLIN, 2024, 3, 31, 7, 0), false);
+        assertEquals(Duration.ofHours(10), Duration.between(
+                transitions.get(0).instant, transitions.get(1).instant));
+    }
+
+    @Test
+    public void fallBackLengthensTheNight() {
+        // Clocks go back from 03:00 to 02:00 on 2024-10-27 in Berlin
+        final AODScheduleEngine engine = berlin(MODE_TIME, "20:00,07:00");
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 10, 26, 12, 0), BERLIN, 2);
+        assertEquals(Duration.ofHours(12), Duration.between(
+                transitions.get(0).instant, transitions.get(1).instant));
+    }
+
+    @Test
+    public void startInTheSkippedHourMovesForward() {
+        final AODScheduleEngine engine = berlin(MODE_TIME, "02:30,06:00");
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 3, 30, 12, 0), BERLIN, 2);
+        // 02:30 does not exist that night, the window opens at 03:30 summer time
+        assertTransition(transitions, 0,
+                ZonedDateTime.of(2024, 3, 31, 3, 30, 0, 0, BERLIN).toInstant(), true);
+        assertTransition(transitions, 1, at(BERLIN, 2024, 3, 31, 6, 0), false);
+    }
+
+    @Test
+    public void polarDayFallsBackToFixedTimes() {
+        final AODScheduleEngine engine =
+                new AODScheduleEngine(MODE_NIGHT, null, TROMSO_LAT, TROMSO_LON);
+        final LocalDate day = LocalDate.of(2024, 6, 21);
+        // Midnight sun: neither sunset nor sunrise
+        assertNull(SolarCalculator.sunset(day, TROMSO_LAT, TROMSO_LON));
+        assertNull(SolarCalculator.sunrise(day.plusDays(1), TROMSO_LAT, TROMSO_LON));
+
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(OSLO, 2024, 6, 21, 12, 0), OSLO, 4);
+        assertEquals(4, transitions.size());
+        assertTransition(transitions, 0, at(OSLO, 2024, 6, 21, 19, 0), true);
+        assertTransition(transitions, 1, at(OSLO, 2024, 6, 22, 7, 0), false);
+        assertTransition(transitions, 2, at(OSLO, 2024, 6, 22, 19, 0), true);
+        assertTransition(transitions, 3, at(OSLO, 2024, 6, 23, 7, 0), false);
+        assertTrue(engine.isActive(at(OSLO, 2024, 6, 22, 1, 0), OSLO));
+    }
+
+    @Test
+    public void polarNightFallsBackToFixedTimes() {
+        final AODScheduleEngine engine =
+                new AODScheduleEngine(MODE_NIGHT, null, TROMSO_LAT, TROMSO_LON);
+        assertNull(SolarCalculator.sunrise(LocalDate.of(2024, 12, 21), TROMSO_LAT,
+                TROMSO_LON));
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(OSLO, 2024, 12, 21, 12, 0), OSLO, 2);
+        assertTransition(transitions, 0, at(OSLO, 2024, 12, 21, 19, 0), true);
+        assertTransition(transitions, 1, at(OSLO, 2024, 12, 22, 7, 0), false);
+    }
+
+    @Test
+    public void polarTransitionsStayOrdered() {
+        final AODScheduleEngine engine =
+                new AODScheduleEngine(MODE_NIGHT, null, TROMSO_LAT, TROMSO_LON);
+        // Crosses the end of the midnight sun, where fallbacks and real times meet
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(OSLO, 2024, 7, 10, 12, 0), OSLO, 80);
+        assertEquals(80, transitions.size());
+        for (int i = 1; i < transitions.size(); i++) {
+            assertTrue(transitions.get(i).instant.isAfter(transitions.get(i - 1).instant));
+            assertTrue(transitions.get(i).on != transitions.get(i - 1).on);
+        }
+    }
+
+    @Test
+    public void unknownLocationUsesFallbackSunTimes() {
+        final AODScheduleEngine engine =
+                new AODScheduleEngine(MODE_NIGHT, null, Double.NaN, Double.NaN);
+        assertFalse(engine.hasLocation());
+        final List<AODScheduleEngine.Transition> transitions =
+                engine.nextTransitions(at(BERLIN, 2024, 6, 21, 12, 0), BERLIN, 2);
+        assertTransition(transitions, 0, at(BERLIN, 2024, 6, 21, 19, 0), true);
+        assertTransition(transitions, 1, at(BERLIN, 2024, 6, 22, 7, 0), false);
+    }
+
+    @Test
+    public void malformedSettingFallsBackToDefaults() {
+        final String[] malformed = {
+            null, "", "20:00", "20:00;07:00", "25:00,07:00", "20:60,07:00", "ab:cd,07:00",
+            "20:00,07:00,", " 20:00,07:00"
+        };
+        for (String value : malformed) {
+            final AODScheduleEngine engine = berlin(MODE_TIME, value);
+            assertEquals(value, LocalTime.of(20, 0), engine.getSince());
+            assertEquals(value, LocalTime.of(7, 0), engine.getTill());
+        }
+    }
+
+    @Test
+    public void withTimeKeepsTheOtherTime() {
+        final AODScheduleEngine engine = berlin(MODE_TIME, "21:05,06:45");
+        assertEquals("09:00,06:45", engine.withTime(true, LocalTime.of(9, 0)));
+        assertEquals("21:05,23:59", engine.withTime(false, LocalTime.of(23, 59)));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import static com.crdroid.settings.fragments.ui.doze.DozeSensorPolicy.SENSOR_PICKUP;
+import static com.crdroid.settings.fragments.ui.doze.DozeSensorPolicy.SENSOR_PROXIMITY;
+import static com.crdroid.settings.fragments.ui.doze.DozeSensorPolicy.SENSOR_TILT;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class DozeSensorPolicyTest {
+
+    private static final int ALL = SENSOR_TILT | SENSOR_PICKUP | SENSOR_PROXIMITY;
+
+    private static DozeSensorPolicy newPolicy(boolean pickupIsAccelerometer) {
+        final DozeSensorPolicy policy =
+                new DozeSensorPolicy(ALL, pickupIsAccelerometer, false);
+        policy.setConfigured(ALL);
+        return policy;
+    }
+
+    @Test
+    public void screenOnDisablesEverything() {
+        final DozeSensorPolicy policy = newPolicy(false);
+        assertEquals(ALL, policy.getEnabledSensors());
+
+        policy.setScreenOn(true);
+        assertEquals(0, policy.getEnabledSensors());
+
+        policy.setScreenOn(false);
+        assertEquals(ALL, policy.getEnabledSensors());
+    }
+
+    @Test
+    public void startsWithScreenState() {
+        final DozeSensorPolicy policy = new DozeSensorPolicy(ALL, false, true);
+        policy.setConfigured(ALL);
+        assertEquals(0, policy.getEnabledSensors());
+    }
+
+    @Test
+    public void onlyConfiguredAndAvailableSensorsListen() {
+        final DozeSensorPolicy policy =
+                new DozeSensorPolicy(SENSOR_TILT | SENSOR_PROXIMITY, false, false);
+        policy.setConfigured(SENSOR_PICKUP | SENSOR_PROXIMITY);
+        assertEquals(SENSOR_PROXIMITY, policy.getEnabledSensors());
+
+        policy.setConfigured(0);
+        assertEquals(0, policy.getEnabledSensors());
+    }
+
+    @Test
+    public void pocketPausesMotionSensors() {
+        final DozeSensorPolicy policy = newPolicy(false);
+        policy.setPocketed(true);
+        assertEquals(SENSOR_PROXIMITY, policy.getEnabledSensors());
+
+        policy.setPocketed(false);
+        assertEquals(ALL, policy.getEnabledSensors());
+    }
+
+    @Test
+    public void pocketIgnoredWithoutProximityGesture() {
+        final DozeSensorPolicy policy = newPolicy(false);
+        policy.setConfigured(SENSOR_TILT | SENSOR_PICKUP);
+        policy.setPocketed(true);
+        assertEquals(SENSOR_TILT | SENSOR_PICKUP, policy.getEnabledSensors());
+    }
+
+    @Test
+    public void screenOnClearsPocket() {
+        final DozeSensorPolicy policy = newPolicy(false);
+        policy.setPocketed(true);
+        policy.setScreenOn(true);
+        policy.setScreenOn(false);
+        assertEquals(ALL, policy.getEnabledSensors());
+    }
+
+    @Test
+    public void idlePausesAccelerometerPickupOnBattery() {
+        final DozeSensorPolicy policy = newPolicy(true);
+        policy.setDeviceIdle(true);
+        assertEquals(SENSOR_TILT | SENSOR_PROXIMITY, policy.getEnabledSensors());
+
+        policy.setDeviceIdle(false);
+        assertEquals(ALL, policy.getEnabledSensors());
+    }
+
+    @Test
+    public void idleKeepsAccelerometerPickupWhileCharging() {
+        final DozeSensorPolicy policy = newPolicy(true);
+        policy.setDeviceIdle(true);
+        policy.setCharging(true);
+        assertEquals(ALL, policy.getEnabledSensors());
+
+        policy.setCharging(false);
+        assertEquals(SENSOR_TILT | SENSOR_PROXIMITY, policy.getEnabledSensors());
+    }
+
+    @Test
+    public void idleKeepsGesturePickup() {
+        final DozeSensorPolicy policy = newPolicy(false);
+        policy.setDeviceIdle(true);
+        assertEquals(ALL, policy.getEnabledSensors());
+    }
+}
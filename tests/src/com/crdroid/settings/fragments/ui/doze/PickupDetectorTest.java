@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Feeds synthetic accelerometer traces at 50 Hz through PickupDetector.
+ */
+public class PickupDetectorTest {
+
+    private static final long MS = 1000000L;
+    private static final long PERIOD_NS = 20 * MS;
+    private static final long MIN_INTERVAL_NS = 2500 * MS;
+    private static final float G = 9.81f;
+
+    private PickupDetector mDetector;
+    private final Random mRandom = new Random(36);
+    private long mNow;
+    // Device pitch in degrees, 0 is flat on its back
+    private float mPitch;
+    private final List<Long> mPickups = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mDetector = new PickupDetector(MIN_INTERVAL_NS, PERIOD_NS);
+        mNow = 1000 * MS;
+    }
+
+    @Test
+    public void restingWithSensorNoiseDoesNotTrigger() {
+        rest(10000 * MS);
+        assertEquals(0, mPickups.size());
+    }
+
+    @Test
+    public void pickupTriggersOnce() {
+        rest(1000 * MS);
+        final long start = mNow;
+        tilt(60f, 600 * MS);
+        rest(1000 * MS);
+
+        assertEquals(1, mPickups.size());
+        final long triggeredAt = mPickups.get(0);
+        assertTrue(triggeredAt > start && triggeredAt <= start + 600 * MS);
+        assertTrue(mDetector.getGestureStartNs() >= start);
+        assertTrue(mDetector.getGestureStartNs() < triggeredAt);
+    }
+
+    @Test
+    public void briskPickupTriggers() {
+        rest(1000 * MS);
+        tilt(70f, 200 * MS);
+        rest(1000 * MS);
+        assertEquals(1, mPickups.size());
+    }
+
+    @Test
+    public void slowDriftDoesNotTrigger() {
+        // Sliding on a tilting surface, well below the motion threshold
+        rest(1000 * MS);
+        tilt(45f, 20000 * MS);
+        rest(1000 * MS);
+        assertEquals(0, mPickups.size());
+    }
+
+    @Test
+    public void tableKnockDoesNotTrigger() {
+        rest(1000 * MS);
+        for (int i = 0; i < 5; i++) {
+            // Sharp vertical jolt without any change of orientation
+            sample(0f, 0f, G + 8f);
+            sample(0f, 0f, G - 6f);
+            sample(0f, 0f, G + 3f);
+            rest(300 * MS);
+        }
+        assertEquals(0, mPickups.size());
+    }
+
+    @Test
+    public void shakingDoesNotTrigger() {
+        rest(1000 * MS);
+        final long end = mNow + 2000 * MS;
+        while (mNow < end) {
+            // Turning while shaken hard along x, as in a bag
+            mPitch = Math.min(60f, mPitch + 1f);
+            final float shake = (float) Math.sin(mNow / (double) (40 * MS)) * 25f;
+            sample(shake + gx(), gy(), gz());
+        }
+        assertEquals(0, mPickups.size());
+    }
+
+    @Test
+    public void continuedMotionStaysOneGesture() {
+        rest(1000 * MS);
+        // Keeps turning long after the tilt threshold and past the debounce interval,
+        // the motion never drops below the exit level in between
+        tilt(170f, 4000 * MS);
+        rest(1000 * MS);
+        assertEquals(1, mPickups.size());
+    }
+
+    @Test
+    public void newGestureWithinIntervalIsDebounced() {
+        rest(1000 * MS);
+        tilt(60f, 500 * MS);
+        rest(500 * MS);
+        // Put down again right away
+        tilt(0f, 500 * MS);
+        rest(500 * MS);
+        assertEquals(1, mPickups.size());
+    }
+
+    @Test
+    public void newGestureAfterIntervalTriggersAgain() {
+        rest(1000 * MS);
+        tilt(60f, 500 * MS);
+        rest(MIN_INTERVAL_NS);
+        tilt(0f, 500 * MS);
+        rest(500 * MS);
+        assertEquals(2, mPickups.size());
+        assertTrue(mPickups.get(1) - mPickups.get(0) >= MIN_INTERVAL_NS);
+    }
+
+    @Test
+    public void resetTakesTheNextSampleAsRest() {
+        rest(1000 * MS);
+        mPitch = 80f;
+        mDetector.reset();
+        // The sensor was off while the device was turned, nothing moves afterwards
+        rest(2000 * MS);
+        assertEquals(0, mPickups.size());
+
+        tilt(20f, 500 * MS);
+        rest(500 * MS);
+        assertEquals(1, mPickups.size());
+    }
+
+    @Test
+    public void outOfOrderSamplesAreIgnored() {
+        rest(1000 * MS);
+        mNow -= 500 * MS;
+        for (int i = 0; i < 5; i++) {
+            // Stale batch replayed with a large turn in it
+            assertEquals(false, mDetector.onSample(mNow, 0f, G, 0f));
+        }
+        mNow += 500 * MS;
+        rest(1000 * MS);
+        assertEquals(0, mPickups.size());
+    }
+
+    @Test
+    public void windowIsSizedBySamplingPeriod() {
+        // A 200 ms period leaves only two samples per window, still enough to trigger
+        mDetector = new PickupDetector(MIN_INTERVAL_NS, 200 * MS);
+        final long period = 200 * MS;
+        mNow += period;
+        for (int i = 0; i < 10; i++, mNow += period) {
+            feed();
+        }
+        for (int i = 1; i <= 4; i++, mNow += period) {
+            mPitch = i * 20f;
+            feed();
+        }
+        for (int i = 0; i < 10; i++, mNow += period) {
+            feed();
+        }
+        assertEquals(1, mPickups.size());
+    }
+
+    private void rest(long durationNs) {
+        final long end = mNow + durationNs;
+        while (mNow < end) {
+            sample(gx(), gy(), gz());
+        }
+    }
+
+    /**
+     * Turns the device to {@code pitch} degrees at a constant rate.
+     */
+    private void tilt(float pitch, long durationNs) {
+        final float from = mPitch;
+        final long start = mNow;
+        final long end = mNow + durationNs;
+        while (mNow < end) {
+            mPitch = from + (pitch - from) * (mNow + PERIOD_NS - start) / durationNs;
+            sample(gx(), gy(), gz());
+        }
+        mPitch = pitch;
+    }
+
+    private void feed() {
+        if (mDetector.onSample(mNow, gx(), gy(), gz())) {
+            mPickups.add(mNow);
+        }
+    }
+
+    private void sample(float x, float y, float z) {
+        // Typical accelerometer noise of a phone at rest
+        final float noise = 0.05f;
+        if (mDetector.onSample(mNow,
+                x + (float) mRandom.nextGaussian() * noise,
+                y + (float) mRandom.nextGaussian() * noise,
+                z + (float) mRandom.nextGaussian() * noise)) {
+            mPickups.add(mNow);
+        }
+        mNow += PERIOD_NS;
+    }
+
+    private float gx() {
+        return 0f;
+    }
+
+    private float gy() {
+        return G * (float) Math.sin(Math.toRadians(mPitch));
+    }
+
+    private float gz() {
+        return G * (float) Math.cos(Math.toRadians(mPitch));
+    }
+}
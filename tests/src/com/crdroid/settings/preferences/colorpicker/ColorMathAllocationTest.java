@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.preferences.colorpicker;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the color math ColorPickerView runs on every drag frame allocates
+ * nothing once its tables are built.
+ */
+public class ColorMathAllocationTest {
+
+    private static final int FRAMES = 10000;
+    private static final int WARM_UP_ROUNDS = 5;
+
+    private com.sun.management.ThreadMXBean mThreads;
+    private long mSink;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean);
+        mThreads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void dragFrameDoesNotAllocate() {
+        final float[] hsv = new float[3];
+        final StringBuilder hex = new StringBuilder(9);
+        // Builds the lookup tables and lets the JIT settle
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            runFrames(hsv, hex);
+        }
+
+        final long thread = Thread.currentThread().getId();
+        final long before = mThreads.getThreadAllocatedBytes(thread);
+        runFrames(hsv, hex);
+        final long allocated = mThreads.getThreadAllocatedBytes(thread) - before;
+        // Compiler transitions can still account a few bytes to this thread, while a
+        // single object per frame would add up to at least 16 bytes per frame
+        assertTrue("Allocated " + allocated + " bytes in " + FRAMES + " frames",
+                allocated < FRAMES);
+    }
+
+    private void runFrames(float[] hsv, StringBuilder hex) {
+        for (int i = 0; i < FRAMES; i++) {
+            // Same calls as a touch move: new hue, tinted alpha slider, listener color
+            final float hue = (i % 3600) / 10f;
+            final float sat = (i % 101) / 100f;
+            final float val = 1f - sat;
+            mSink += ColorMath.hueToColor(hue);
+            mSink += ColorMath.hsvToColor(0xff, hue, sat, val);
+            final int color = ColorMath.hsvToColor(i & 0xff, hue, sat, val);
+            ColorMath.colorToHsv(color, hsv);
+            hex.setLength(0);
+            ColorMath.appendHex(hex, color, 8);
+            mSink += hex.charAt(0);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.preferences.colorpicker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks ColorMath against the float HSV conversions of the framework.
+ */
+public class ColorMathTest {
+
+    @Test
+    public void hsvRoundTripIsWithinOneStepPerChannel() {
+        final float[] hsv = new float[3];
+        for (int r = 0; r < 256; r += 3) {
+            for (int g = 0; g < 256; g += 3) {
+                for (int b = 0; b < 256; b += 3) {
+                    final int color = 0xff000000 | (r << 16) | (g << 8) | b;
+                    ColorMath.colorToHsv(color, hsv);
+                    assertChannelsWithinOne(color,
+                            ColorMath.hsvToColor(0xff, hsv[0], hsv[1], hsv[2]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void hsvToColorMatchesFramework() {
+        final Random random = new Random(46);
+        for (int i = 0; i < 100000; i++) {
+            final int alpha = random.nextInt(256);
+            final float hue = random.nextFloat() * 360f;
+            final float sat = random.nextFloat();
+            final float val = random.nextFloat();
+            final int expected = frameworkHsvToColor(alpha, hue, sat, val);
+            final int actual = ColorMath.hsvToColor(alpha, hue, sat, val);
+            assertEquals(alpha, actual >>> 24);
+            assertChannelsWithinOne(expected, actual);
+        }
+    }
+
+    @Test
+    public void hsvToColorClampsOutOfRangeValues() {
+        assertEquals(0xffff0000, ColorMath.hsvToColor(0xff, 0f, 2f, 2f));
+        assertEquals(0xff000000, ColorMath.hsvToColor(0xff, 120f, 1f, -1f));
+        assertEquals(0xffffffff, ColorMath.hsvToColor(0xff, 240f, -1f, 1f));
+        assertEquals(ColorMath.hueToColor(0f), ColorMath.hueToColor(-10f));
+        assertEquals(ColorMath.hueToColor(360f), ColorMath.hueToColor(400f));
+    }
+
+    @Test
+    public void colorToHsvMatchesFramework() {
+        final float[] hsv = new float[3];
+        ColorMath.colorToHsv(0xff808080, hsv);
+        assertHsv(0f, 0f, 128 / 255f, hsv);
+        ColorMath.colorToHsv(0xffff0000, hsv);
+        assertHsv(0f, 1f, 1f, hsv);
+        ColorMath.colorToHsv(0xff00ff00, hsv);
+        assertHsv(120f, 1f, 1f, hsv);
+        ColorMath.colorToHsv(0x000000ff, hsv);
+        assertHsv(240f, 1f, 1f, hsv);
+        ColorMath.colorToHsv(0xffff0080, hsv);
+        assertHsv(360f - 30f * 128 / 255f * 2f, 1f, 1f, hsv);
+    }
+
+    @Test
+    public void hueGradientRunsFromRedBackToRed() {
+        final int[] gradient = ColorMath.getHueGradient();
+        assertEquals(361, gradient.length);
+        assertEquals(0xffff0000, gradient[0]);
+        assertEquals(0xff0000ff, gradient[120]);
+        assertEquals(0xff00ff00, gradient[240]);
+        assertEquals(0xffff0000, gradient[360]);
+        assertSame(gradient, ColorMath.getHueGradient());
+    }
+
+    @Test
+    public void formatsHex() {
+        assertEquals("00ff7f", ColorMath.toHex(0x1200ff7f, false));
+        assertEquals("1200ff7f", ColorMath.toHex(0x1200ff7f, true));
+        assertEquals("#0a", ColorMath.appendHex(new StringBuilder("#"), 0xa, 2).toString());
+    }
+
+    @Test
+    public void parsesHex() {
+        assertEquals(0xff00ff7f, ColorMath.parseHex("00ff7f"));
+        assertEquals(0xff00ff7f, ColorMath.parseHex("#00FF7F"));
+        assertEquals(0x1200ff7f, ColorMath.parseHex("1200ff7f"));
+        assertEquals(0x00000000, ColorMath.parseHex("#00000000"));
+        assertEquals(0xffffffff, ColorMath.parseHex("ffffffff"));
+        for (int color : new int[] {0, 0x80123456, 0xffabcdef, -1}) {
+            assertEquals(color, ColorMath.parseHex(ColorMath.toHex(color, true)));
+        }
+    }
+
+    @Test
+    public void parseHexRejectsMalformedColors() {
+        // LightSettingsDialog and ColorPickerPreference rely on the exception
+        final String[] malformed = {
+            "", "#", "fff", "#fff", "fffff", "fffffff", "#fffffff", "fffffffff",
+            "##ffffff", "ggffff", "#00ff7z", "00 ff7f", "+0ff7f0", "-0ff7f0",
+        };
+        for (String text : malformed) {
+            try {
+                ColorMath.parseHex(text);
+                fail("Parsed \"" + text + "\"");
+            } catch (NumberFormatException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static void assertChannelsWithinOne(int expected, int actual) {
+        for (int shift = 0; shift <= 16; shift += 8) {
+            final int difference = ((expected >> shift) & 0xff) - ((actual >> shift) & 0xff);
+            assertTrue(String.format("Expected %08x, got %08x", expected, actual),
+                    Math.abs(difference) <= 1);
+        }
+    }
+
+    private static void assertHsv(float hue, float sat, float val, float[] hsv) {
+        assertEquals(hue, hsv[0], 0.5f);
+        assertEquals(sat, hsv[1], 0.001f);
+        assertEquals(val, hsv[2], 0.001f);
+    }
+
+    /**
+     * Color.HSVToColor, which ends up in SkHSVToColor.
+     */
+    private static int frameworkHsvToColor(int alpha, float hue, float sat, float val) {
+        final float s = Math.max(0f, Math.min(1f, sat));
+        final float v = Math.max(0f, Math.min(1f, val));
+        final int v255 = Math.round(v * 255f);
+        if (s <= 0f) {
+            return (alpha << 24) | (v255 << 16) | (v255 << 8) | v255;
+        }
+        final float hx = hue < 0f || hue >= 360f ? 0f : hue / 60f;
+        final int w = (int) Math.floor(hx);
+        final float f = hx - w;
+        final int p = Math.round((1f - s) * v * 255f);
+        final int q = Math.round((1f - s * f) * v * 255f);
+        final int t = Math.round((1f - s * (1f - f)) * v * 255f);
+        final int r;
+        final int g;
+        final int b;
+        switch (w) {
+            case 0: r = v255; g = t; b = p; break;
+            case 1: r = q; g = v255; b = p; break;
+            case 2: r = p; g = v255; b = t; break;
+            case 3: r = p; g = q; b = v255; break;
+            case 4: r = t; g = p; b = v255; break;
+            default: r = v255; g = p; b = q; break;
+        }
+        return (alpha << 24) | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks AppSearchIndex against a linear contains() over the normalized labels and
+ * package names, for the query sequences the app pickers see while typing.
+ */
+public class AppSearchIndexTest {
+
+    private static final int APP_COUNT = 500;
+    private static final String[] WORDS = {
+        "camera", "calendar", "clock", "contacts", "messages", "phone", "gallery",
+        "music", "files", "maps", "weather", "notes", "browser", "settings", "mail",
+        "recorder", "calculator", "wallet", "fitness", "radio", "Caf\u00e9", "\u00c9cole",
+    };
+
+    private static class App {
+        String label;
+        final String packageName;
+
+        App(String label, String packageName) {
+            this.label = label;
+            this.packageName = packageName;
+        }
+
+        @Override
+        public String toString() {
+            return label + " (" + packageName + ")";
+        }
+    }
+
+    private final AppSearchIndex<App> mIndex = new AppSearchIndex<>();
+    private final List<App> mApps = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < APP_COUNT; i++) {
+            final String label = WORDS[random.nextInt(WORDS.length)] + " "
+                    + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            final String packageName = "com.vendor" + random.nextInt(20) + "."
+                    + WORDS[random.nextInt(WORDS.length)].toLowerCase() + i;
+            final App app = new App(label, packageName);
+            mApps.add(app);
+            mIndex.add(app, app.label, app.packageName);
+        }
+    }
+
+    @Test
+    public void substringsMatchLinearSearch() {
+        final Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            final App app = mApps.get(random.nextInt(APP_COUNT));
+            final String text = random.nextBoolean() ? app.label : app.packageName;
+            final int start = random.nextInt(text.length());
+            final int end = start + 1 + random.nextInt(text.length() - start);
+            assertMatchesLinear(text.substring(start, end));
+        }
+    }
+
+    @Test
+    public void trigramMissesMatchLinearSearch() {
+        // Every trigram is indexed, but never in this order or not at all
+        assertMatchesLinear("camera calendar clock");
+        assertMatchesLinear("arema");
+        assertMatchesLinear("xyz");
+        assertMatchesLinear("qqqq");
+        assertMatchesLinear("music 4999");
+        assertEquals(0, mIndex.filter("zzz", mApps).size());
+    }
+
+    @Test
+    public void shortQueriesMatchLinearSearch() {
+        for (String query : Arrays.asList("a", "C", "7", ".", "ca", "e ", "42", "zq")) {
+            assertMatchesLinear(query);
+        }
+    }
+
+    @Test
+    public void emptyQueryReturnsEverything() {
+        assertSame(mApps, mIndex.filter("", mApps));
+        assertSame(mApps, mIndex.filter("   ", mApps));
+    }
+
+    @Test
+    public void accentsAndCaseAreIgnored() {
+        assertMatchesLinear("cafe");
+        assertMatchesLinear("ECOLE");
+        assertMatchesLinear("\u00e9cole");
+        assertTrue(mIndex.filter("cafe", mApps).size() > 0);
+    }
+
+    @Test
+    public void typingNarrowsAndBackspacingWidens() {
+        final String typed = "com.vendor1.camera1";
+        // Typing, one character at a time
+        for (int i = 1; i <= typed.length(); i++) {
+            assertTypedMatchesLinear(typed.substring(0, i));
+        }
+        // Backspacing out of the narrowed results
+        for (int i = typed.length() - 1; i >= 1; i--) {
+            assertTypedMatchesLinear(typed.substring(0, i));
+        }
+        // Replacing the query with one that does not extend it
+        assertTypedMatchesLinear("music");
+        assertTypedMatchesLinear("musi");
+        assertTypedMatchesLinear("clock");
+    }
+
+    @Test
+    public void removedAndReaddedItemsAreFound() {
+        final App removed = mApps.remove(10);
+        mIndex.remove(removed);
+        assertMatchesLinear(removed.packageName);
+        assertEquals(0, mIndex.filter(removed.packageName,
+                Collections.singletonList(removed)).size());
+
+        // Reuses the freed slot
+        final App added = new App("Brand new app", "org.example.brandnew");
+        mApps.add(added);
+        mIndex.add(added, added.label, added.packageName);
+        assertMatchesLinear("brand new");
+        assertMatchesLinear(removed.packageName);
+
+        // Adding it again replaces its text
+        added.label = "Renamed";
+        mIndex.add(added, added.label, added.packageName);
+        assertMatchesLinear("brand new");
+        assertMatchesLinear("renamed");
+    }
+
+    @Test
+    public void indexIsFasterThanLinearSearch() {
+        final List<String> keystrokes = new ArrayList<>();
+        for (String word : WORDS) {
+            final String query = AppSearchIndex.normalize(word);
+            for (int i = 1; i <= query.length(); i++) {
+                keystrokes.add(query.substring(0, i));
+            }
+        }
+
+        // Lets the JIT settle on both paths before timing them
+        long indexNs = 0;
+        long linearNs = 0;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (String query : keystrokes) {
+                mIndex.filter(query, mApps);
+            }
+            indexNs = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String query : keystrokes) {
+                linearFilter(query);
+            }
+            linearNs = System.nanoTime() - start;
+        }
+
+        System.out.println("AppSearchIndex: " + keystrokes.size() + " keystrokes over "
+                + APP_COUNT + " apps, index " + indexNs / 1000 + " us, linear "
+                + linearNs / 1000 + " us");
+        assertTrue("Index took " + indexNs + " ns, linear search " + linearNs + " ns",
+                indexNs < linearNs);
+    }
+
+    private void assertMatchesLinear(String query) {
+        mIndex.invalidate();
+        assertEquals("Query \"" + query + "\"", linearFilter(query), mIndex.filter(query, mApps));
+    }
+
+    private void assertTypedMatchesLinear(String query) {
+        assertEquals("Query \"" + query + "\"", linearFilter(query), mIndex.filter(query, mApps));
+    }
+
+    /**
+     * What the pickers did before the index: normalize and scan every app per keystroke.
+     */
+    private List<App> linearFilter(String query) {
+        final String normalized = AppSearchIndex.normalize(query);
+        final List<App> result = new ArrayList<>();
+        for (App app : mApps) {
+            if (AppSearchIndex.normalize(app.label).contains(normalized)
+                    || AppSearchIndex.normalize(app.packageName).contains(normalized)) {
+                result.add(app);
+            }
+        }
+        return result;
+    }
+}
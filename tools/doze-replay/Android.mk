@@ -0,0 +1,35 @@
+#
+# Copyright (C) 2024 crDroid Android Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+LOCAL_PATH := $(call my-dir)
+
+# Replays recorded doze sensor traces on the host:
+#   java -jar $ANDROID_HOST_OUT/framework/DozeSensorReplay.jar trace.bin...
+include $(CLEAR_VARS)
+
+DOZE_SRC_DIR := ../../src/com/crdroid/settings/fragments/ui/doze
+
+LOCAL_MODULE := DozeSensorReplay
+LOCAL_MODULE_TAGS := optional
+LOCAL_SRC_FILES := \
+    $(call all-java-files-under, src) \
+    $(DOZE_SRC_DIR)/PickupDetector.java \
+    $(DOZE_SRC_DIR)/ProximityGestureDetector.java \
+    $(DOZE_SRC_DIR)/SensorTrace.java \
+    $(DOZE_SRC_DIR)/TiltDetector.java
+LOCAL_JAR_MANIFEST := manifest.txt
+
+include $(BUILD_HOST_JAVA_LIBRARY)
@@ -0,0 +1,35 @@
+#!/bin/bash
+#
+# Copyright (C) 2024 crDroid Android Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Builds SensorTraceReplay with the host JDK and runs it on the given traces.
+# Usage: replay.sh [options] trace.bin...
+
+set -e
+
+TOOL_DIR=$(cd "$(dirname "$0")" && pwd)
+DOZE_SRC_DIR=$TOOL_DIR/../../src/com/crdroid/settings/fragments/ui/doze
+OUT_DIR=$(mktemp -d)
+trap 'rm -rf "$OUT_DIR"' EXIT
+
+javac -d "$OUT_DIR" \
+    "$TOOL_DIR"/src/com/crdroid/settings/fragments/ui/doze/SensorTraceReplay.java \
+    "$DOZE_SRC_DIR"/PickupDetector.java \
+    "$DOZE_SRC_DIR"/ProximityGestureDetector.java \
+    "$DOZE_SRC_DIR"/SensorTrace.java \
+    "$DOZE_SRC_DIR"/TiltDetector.java
+
+java -cp "$OUT_DIR" com.crdroid.settings.fragments.ui.doze.SensorTraceReplay "$@"
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2024 crDroid Android Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.crdroid.settings.fragments.ui.doze;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays traces written by {@link SensorTraceRecorder} through the tilt, pickup and
+ * proximity gesture logic and reports how often and how fast each one triggers.
+ *
+ * Time comes from the recorded event timestamps and pulses go to a counting sink, so
+ * this runs on any desktop JVM without Android. It shares the package of the detectors
+ * it drives and is compiled together with their sources from the app tree, either as
+ * the DozeSensorReplay host jar or straight from a checkout:
+ * <pre>
+ * tools/doze-replay/replay.sh [--handwave-max-ns N] [--pocket-min-ns N] \
+ *         [--tilt-interval-ms N] [--pickup-interval-ms N] [--accel-period-ms N] \
+ *         [--match-window-ms N] trace.bin...
+ * </pre>
+ * A trigger followed by a recorded screen on within the match window is counted as a
+ * hit, every other trigger as a false trigger.
+ */
+public final class SensorTraceReplay {
+
+    private static final long MS = 1000000L;
+
+    static final String SOURCE_TILT = "tilt";
+    static final String SOURCE_PICKUP = "pickup";
+    static final String SOURCE_HANDWAVE = "handwave";
+    static final String SOURCE_POCKET = "pocket";
+    private static final String[] SOURCES = {
+        SOURCE_TILT, SOURCE_PICKUP, SOURCE_HANDWAVE, SOURCE_POCKET
+    };
+
+    // Defaults mirror res/values/cr_config.xml
+    long handwaveMaxDeltaNs = 1000 * MS;
+    long pocketMinDeltaNs = 2000 * MS;
+    long tiltIntervalNs = 2500 * MS;
+    long pickupIntervalNs = 2500 * MS;
+    long accelPeriodNs = 20 * MS;
+    long matchWindowNs = 3000 * MS;
+
+    interface PulseSink {
+        void onPulse(String source, long timestampNs, long latencyNs);
+    }
+
+    /**
+     * Counts pulses per source and matches them against the recorded screen on markers.
+     */
+    static final class Stats implements PulseSink {
+        private final long mMatchWindowNs;
+        private final List<String> mPendingSources = new ArrayList<>();
+        private final List<Long> mPendingTimes = new ArrayList<>();
+
+        final int[] triggers = new int[SOURCES.length];
+        final int[] falseTriggers = new int[SOURCES.length];
+        final long[] latencySumNs = new long[SOURCES.length];
+        final long[] latencyMaxNs = new long[SOURCES.length];
+        int screenOns;
+        int missedScreenOns;
+        long durationNs;
+
+        Stats(long matchWindowNs) {
+            mMatchWindowNs = matchWindowNs;
+        }
+
+        @Override
+        public void onPulse(String source, long timestampNs, long latencyNs) {
+            final int index = indexOf(source);
+            triggers[index]++;
+            latencySumNs[index] += latencyNs;
+            latencyMaxNs[index] = Math.max(latencyMaxNs[index], latencyNs);
+            mPendingSources.add(source);
+            mPendingTimes.add(timestampNs);
+        }
+
+        void onScreenOn(long timestampNs) {
+            screenOns++;
+            boolean matched = false;
+            for (int i = 0; i < mPendingTimes.size(); i++) {
+                if (timestampNs - mPendingTimes.get(i) <= mMatchWindowNs) {
+                    matched = true;
+                } else {
+                    falseTriggers[indexOf(mPendingSources.get(i))]++;
+                }
+            }
+            if (!matched) {
+                missedScreenOns++;
+            }
+            mPendingSources.clear();
+            mPendingTimes.clear();
+        }
+
+        void finish() {
+            for (String source : mPendingSources) {
+                falseTriggers[indexOf(source)]++;
+            }
+            mPendingSources.clear();
+            mPendingTimes.clear();
+        }
+
+        private static int indexOf(String source) {
+            for (int i = 0; i < SOURCES.length; i++) {
+                if (SOURCES[i].equals(source)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException(source);
+        }
+    }
+
+    Stats replay(SensorTrace.Reader reader) throws IOException {
+        final Stats stats = new Stats(matchWindowNs);
+        final TiltDetector tilt = new TiltDetector(tiltIntervalNs);
+        final PickupDetector pickup = new PickupDetector(pickupIntervalNs, accelPeriodNs);
+        final ProximityGestureDetector proximity =
+                new ProximityGestureDetector(handwaveMaxDeltaNs, pocketMinDeltaNs);
+        float proximityRange = Float.MAX_VALUE;
+        long lastPickupGesture = Long.MIN_VALUE;
+        long first = Long.MIN_VALUE;
+        long last = Long.MIN_VALUE;
+
+        while (reader.next()) {
+            final long t = reader.timestampNs;
+            if (first == Long.MIN_VALUE) {
+                first = t;
+            }
+            last = t;
+
+            switch (reader.type) {
+                case SensorTrace.MARKER_SENSOR_INFO:
+                    if ((int) reader.values[0] == SensorTrace.TYPE_PROXIMITY) {
+                        proximityRange = reader.values[1];
+                    }
+                    break;
+                case SensorTrace.MARKER_SCREEN_ON:
+                    stats.onScreenOn(t);
+                    break;
+                case SensorTrace.TYPE_TILT_DETECTOR:
+                    if (tilt.onSample(t, reader.values[0])) {
+                        stats.onPulse(SOURCE_TILT, t, 0);
+                    }
+                    break;
+                case SensorTrace.TYPE_ACCELEROMETER:
+                    if (pickup.onSample(t, reader.values[0], reader.values[1],
+                            reader.values[2])) {
+                        stats.onPulse(SOURCE_PICKUP, t, t - pickup.getGestureStartNs());
+                    }
+                    break;
+                case SensorTrace.TYPE_PICK_UP_GESTURE:
+                    if (lastPickupGesture == Long.MIN_VALUE
+                            || t - lastPickupGesture >= pickupIntervalNs) {
+                        lastPickupGesture = t;
+                        stats.onPulse(SOURCE_PICKUP, t, 0);
+                    }
+                    break;
+                case SensorTrace.TYPE_PROXIMITY:
+                    final int gestures = proximity.onSample(t, reader.values[0] < proximityRange);
+                    // Handwave takes precedence, as in ProximitySensor with both enabled
+                    if ((gestures & ProximityGestureDetector.GESTURE_HANDWAVE) != 0) {
+                        stats.onPulse(SOURCE_HANDWAVE, t, 0);
+                    } else if ((gestures & ProximityGestureDetector.GESTURE_POCKET) != 0) {
+                        stats.onPulse(SOURCE_POCKET, t, 0);
+                    }
+                    break;
+            }
+        }
+        stats.finish();
+        stats.durationNs = first == Long.MIN_VALUE ? 0 : last - first;
+        return stats;
+    }
+
+    private static void print(String name, Stats stats) {
+        System.out.println(String.format(Locale.US,
+                "%s: %.1f min, %d screen on (%d without trigger)", name,
+                stats.durationNs / 60e9, stats.screenOns, stats.missedScreenOns));
+        for (int i = 0; i < SOURCES.length; i++) {
+            if (stats.triggers[i] == 0) {
+                continue;
+            }
+            System.out.println(String.format(Locale.US,
+                    "  %-8s triggers %4d  false %4d  latency avg %6.1f ms  max %6.1f ms",
+                    SOURCES[i], stats.triggers[i], stats.falseTriggers[i],
+                    stats.latencySumNs[i] / (double) stats.triggers[i] / MS,
+                    stats.latencyMaxNs[i] / (double) MS));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final SensorTraceReplay replay = new SensorTraceReplay();
+        final List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--handwave-max-ns":
+                    replay.handwaveMaxDeltaNs = Long.parseLong(args[++i]);
+                    break;
+                case "--pocket-min-ns":
+                    replay.pocketMinDeltaNs = Long.parseLong(args[++i]);
+                    break;
+                case "--tilt-interval-ms":
+                    replay.tiltIntervalNs = Long.parseLong(args[++i]) * MS;
+                    break;
+                case "--pickup-interval-ms":
+                    replay.pickupIntervalNs = Long.parseLong(args[++i]) * MS;
+                    break;
+                case "--accel-period-ms":
+                    replay.accelPeriodNs = Long.parseLong(args[++i]) * MS;
+                    break;
+                case "--match-window-ms":
+                    replay.matchWindowNs = Long.parseLong(args[++i]) * MS;
+                    break;
+                default:
+                    files.add(args[i]);
+                    break;
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: SensorTraceReplay [options] trace.bin...");
+            System.exit(1);
+        }
+
+        for (String file : files) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                print(file, replay.replay(new SensorTrace.Reader(in)));
+            }
+        }
+    }
+}